@@ -10,7 +10,6 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.example.board_plugin.NotificationHelper;
-import com.example.board_plugin.ResourceHelper;
 import com.example.board_plugin.connection.BluetoothForegroundService;
 
 import java.util.HashMap;
@@ -57,9 +56,8 @@ public class ForegroundServiceHandler implements MethodChannel.MethodCallHandler
             @Override
             public void onReceive(Context context, Intent intent) {
                 if ("com.example.ppwd_frontend.DISCONNECT".equals(intent.getAction())) {
-                    int appIconId = ResourceHelper.getAppIconResourceId(context);
-                    NotificationHelper notificationHelper = new NotificationHelper(context, appIconId);
-                    notificationHelper.showBluetoothDisconnectionNotification("Service manually disconnected");
+                    NotificationHelper.getInstance(context)
+                            .showBluetoothDisconnectionNotification("Service manually disconnected");
 
                     methodChannel.invokeMethod("onDisconnect", null);
                 }
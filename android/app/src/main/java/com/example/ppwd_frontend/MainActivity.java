@@ -6,13 +6,10 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.example.board_plugin.MethodChannelHandler;
 import com.example.board_plugin.NotificationHelper;
-import com.example.board_plugin.connection.BluetoothConnectionManager;
 import com.example.board_plugin.connection.BluetoothForegroundService;
-import com.example.board_plugin.setup.SensorSetupManager;
+import com.example.board_plugin.connection.BoardSessionRegistry;
 
-import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -23,16 +20,12 @@ import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
 
-public class MainActivity extends FlutterActivity implements BluetoothConnectionManager.ConnectionCallback, MethodCallHandler {
+public class MainActivity extends FlutterActivity implements MethodCallHandler {
     private static final String TAG = "MainActivity";
-    private static final String CHANNEL = "flutter.native/board";
     private static final String SCANNER_CHANNEL = "com.example.ppwd_frontend/metawear_scanner";
 
-    private BluetoothConnectionManager bluetoothManager;
-    private MethodChannelHandler methodChannelHandler;
     private ForegroundServiceHandler foregroundServiceHandler;
     private NotificationHelper notificationHelper;
-    private boolean isConnected = false;
 
     private MethodChannel scannerChannel;
     private Result pendingScanResult;
@@ -45,15 +38,10 @@ public class MainActivity extends FlutterActivity implements BluetoothConnection
 
         Log.i(TAG, "Configuring Flutter engine");
 
-        notificationHelper = new NotificationHelper(this, R.mipmap.ic_launcher);
-
-        SensorSetupManager setupManager = new SensorSetupManager();
-        bluetoothManager = new BluetoothConnectionManager(this, setupManager);
-        bluetoothManager.setConnectionCallback(this);
-
-        MethodChannel methodChannel = new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), CHANNEL);
-        methodChannelHandler = new MethodChannelHandler(methodChannel, bluetoothManager);
+        notificationHelper = NotificationHelper.getInstance(this);
 
+        // The board channels are served by BoardPlugin, which attaches to the process-wide
+        // BoardSessionRegistry shared with BluetoothForegroundService.
         foregroundServiceHandler = new ForegroundServiceHandler(this, flutterEngine);
 
         scannerChannel = new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), SCANNER_CHANNEL);
@@ -95,30 +83,12 @@ public class MainActivity extends FlutterActivity implements BluetoothConnection
         }
     }
 
-    @Override
-    public void onConnectionSuccess(String macAddress, int batteryLevel, List<String> activeSensors) {
-        Log.i(TAG, "Connection success callback received");
-        isConnected = true;
-        runOnUiThread(() -> {
-            methodChannelHandler.notifyConnectionSuccess(macAddress, batteryLevel, activeSensors);
-        });
-    }
-
-    @Override
-    public void onDisconnection(String reason) {
-        Log.i(TAG, "Disconnection callback received: " + reason);
-        isConnected = false;
-        runOnUiThread(() -> {
-            methodChannelHandler.notifyDisconnection(reason);
-        });
-    }
-
     @Override
     public void onDestroy() {
         Log.i(TAG, "MainActivity is being destroyed");
 
         if (!isChangingConfigurations()) {
-            if (isConnected || (bluetoothManager != null && bluetoothManager.isConnected())) {
+            if (BoardSessionRegistry.shared(this).isConnected()) {
                 notificationHelper.showAppKilledNotification();
             }
 
@@ -1,56 +1,88 @@
 package com.example.board_plugin;
 
 import android.content.Context;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import com.example.board_plugin.connection.BluetoothConnectionManager;
-import com.example.board_plugin.setup.SensorSetupManager;
+import com.example.board_plugin.connection.BoardSessionRegistry;
+import com.example.board_plugin.upload.MeasurementUploader;
 
 import java.util.List;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugin.common.StandardMethodCodec;
 
 public final class BoardPlugin implements FlutterPlugin {
     private static final String CHANNEL = "flutter.native/board";
+    private static final String TAG = "BoardPlugin";
 
     private MethodChannel channel;
-    private BluetoothConnectionManager bluetoothManager;
+    private BoardSessionRegistry sessions;
     private MethodChannelHandler handler;
+    private SampleStreamHandler sampleStreamHandler;
+    private BluetoothConnectionManager.ConnectionCallback connectionCallback;
 
     @Override
     public void onAttachedToEngine(@NonNull FlutterPluginBinding binding) {
         Context ctx = binding.getApplicationContext();
-        channel = new MethodChannel(binding.getBinaryMessenger(), CHANNEL);
+        channel = createChannel(binding.getBinaryMessenger());
 
-        bluetoothManager = new BluetoothConnectionManager(ctx, new SensorSetupManager());
+        sessions = BoardSessionRegistry.shared(ctx);
 
-        bluetoothManager.setConnectionCallback(new BluetoothConnectionManager.ConnectionCallback() {
+        connectionCallback = new BluetoothConnectionManager.ConnectionCallback() {
             @Override
             public void onConnectionSuccess(String mac, int batteryLevel, List<String> activeSensors) {
                 handler.notifyConnectionSuccess(mac, batteryLevel, activeSensors);
             }
 
             @Override
-            public void onDisconnection(String reason) {
-                handler.notifyDisconnection(reason);
+            public void onDisconnection(String mac, String reason) {
+                handler.notifyDisconnection(mac, reason);
             }
-        });
+        };
 
-        handler = new MethodChannelHandler(channel, bluetoothManager);
+        sampleStreamHandler = SampleStreamHandler.register(binding.getBinaryMessenger(), sessions);
+        handler = new MethodChannelHandler(channel, sessions, sampleStreamHandler, MeasurementUploader.shared(ctx));
+        // Only once the handler exists, since the callback forwards to it.
+        sessions.addConnectionCallback(connectionCallback);
+    }
+
+    // Board calls are served on a background task queue so drains and battery reads stay off the
+    // platform thread; embedders without task queues fall back to it.
+    private static MethodChannel createChannel(BinaryMessenger messenger) {
+        try {
+            return new MethodChannel(messenger, CHANNEL, StandardMethodCodec.INSTANCE,
+                    messenger.makeBackgroundTaskQueue());
+        } catch (UnsupportedOperationException e) {
+            Log.w(TAG, "Background task queues are not supported, handling board calls on the main thread");
+            return new MethodChannel(messenger, CHANNEL);
+        }
     }
 
     @Override
     public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
+        // Before the handler goes, so a connection event arriving meanwhile cannot reach a null one.
+        if (sessions != null) {
+            sessions.removeConnectionCallback(connectionCallback);
+        }
         if (handler != null) {
             channel.setMethodCallHandler(null);
             handler = null;
         }
-        if (bluetoothManager != null) {
-            bluetoothManager.disconnectFromBoard();
+        if (sampleStreamHandler != null) {
+            sampleStreamHandler.onCancel(null);
+            sampleStreamHandler = null;
+        }
+        // The foreground service keeps the boards connected without an engine attached.
+        if (sessions != null && !sessions.isRetainedByService()) {
+            sessions.disconnectAll();
         }
-        bluetoothManager = null;
+        connectionCallback = null;
+        sessions = null;
         channel = null;
     }
 }
@@ -1,14 +1,24 @@
 package com.example.board_plugin;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import com.example.board_plugin.connection.BluetoothConnectionManager;
+import com.example.board_plugin.connection.BoardSessionRegistry;
+import com.example.board_plugin.measurement.MeasurementHandler;
+import com.example.board_plugin.metrics.PluginMetrics;
+import com.example.board_plugin.setup.SampleSource;
+import com.example.board_plugin.setup.SensorProfile;
+import com.example.board_plugin.upload.MeasurementUploader;
+import com.example.board_plugin.upload.UploadConfig;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 
+import bolts.Task;
 import io.flutter.plugin.common.MethodChannel;
 
 public class MethodChannelHandler {
@@ -17,24 +27,40 @@ public class MethodChannelHandler {
     private static final String connectToBoardFunction = "connectToBoard";
     private static final String disconnectFromBoardFunction = "disconnectFromBoard";
     private static final String getModuleDataFunction = "getModulesData";
+    private static final String getModuleDataPackedFunction = "getModulesDataPacked";
+    private static final String getDevicesDataPackedFunction = "getDevicesDataPacked";
     private static final String getBatteryLevelFunction = "getBatteryLevel";
+    private static final String ackSampleBatchFunction = "ackSampleBatch";
+    private static final String configureUploaderFunction = "configureUploader";
+    private static final String getMetricsFunction = "getMetrics";
     private static final String handleBoardDisconnectionFunction = "handleBoardDisconnection";
     private static final String onConnectionSuccessFunction = "onConnectionSuccess";
 
     private final MethodChannel methodChannel;
-    private final BluetoothConnectionManager bluetoothManager;
+    private final BoardSessionRegistry sessions;
+    private final SampleStreamHandler sampleStreamHandler;
+    private final MeasurementUploader uploader;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     private final Map<String, Consumer<MethodCallContext>> methodHandlers;
 
-    public MethodChannelHandler(MethodChannel methodChannel, BluetoothConnectionManager bluetoothManager) {
+    public MethodChannelHandler(MethodChannel methodChannel, BoardSessionRegistry sessions,
+                                SampleStreamHandler sampleStreamHandler, MeasurementUploader uploader) {
         this.methodChannel = methodChannel;
-        this.bluetoothManager = bluetoothManager;
+        this.sessions = sessions;
+        this.sampleStreamHandler = sampleStreamHandler;
+        this.uploader = uploader;
 
         methodHandlers = Map.of(
-                connectToBoardFunction, this::handleConnectToBoard,
-                disconnectFromBoardFunction, this::handleDisconnectFromBoard,
-                getModuleDataFunction, this::handleGetModuleData,
-                getBatteryLevelFunction, this::handleGetBatteryLevel
+                connectToBoardFunction, onMainThread(timed(connectToBoardFunction, this::handleConnectToBoard)),
+                disconnectFromBoardFunction, onMainThread(timed(disconnectFromBoardFunction, this::handleDisconnectFromBoard)),
+                getModuleDataFunction, timed(getModuleDataFunction, this::handleGetModuleData),
+                getModuleDataPackedFunction, timed(getModuleDataPackedFunction, this::handleGetModuleDataPacked),
+                getDevicesDataPackedFunction, timed(getDevicesDataPackedFunction, this::handleGetDevicesDataPacked),
+                getBatteryLevelFunction, timed(getBatteryLevelFunction, this::handleGetBatteryLevel),
+                ackSampleBatchFunction, timed(ackSampleBatchFunction, this::handleAckSampleBatch),
+                configureUploaderFunction, onMainThread(timed(configureUploaderFunction, this::handleConfigureUploader)),
+                getMetricsFunction, this::handleGetMetrics
         );
 
         setupMethodCallHandler();
@@ -42,15 +68,39 @@ public class MethodChannelHandler {
 
     private void setupMethodCallHandler() {
         methodChannel.setMethodCallHandler((call, result) -> {
+            dispatch(methodHandlers.getOrDefault(call.method, this::handleUnknown),
+                    new MethodCallContext(call, result));
+        });
+    }
+
+    private static void dispatch(Consumer<MethodCallContext> handler, MethodCallContext context) {
+        try {
+            handler.accept(context);
+        } catch (Exception e) {
+            Log.e(TAG, "Error handling method call: " + context.call().method, e);
+            context.result().error("EXCEPTION", e.getMessage(), e.getStackTrace());
+        }
+    }
+
+    // The channel delivers calls on a background task queue. Calls that start or stop
+    // connections drive state owned by the main thread and are handed over to it; drains and
+    // battery reads stay on the queue, which runs them one at a time.
+    private Consumer<MethodCallContext> onMainThread(Consumer<MethodCallContext> handler) {
+        return context -> mainHandler.post(() -> dispatch(handler, context));
+    }
+
+    // Records how long the handler itself runs, on whichever thread it ends up on; the call count
+    // in the histogram replaces the per-call debug log.
+    private static Consumer<MethodCallContext> timed(String method, Consumer<MethodCallContext> handler) {
+        var latency = PluginMetrics.shared().histogram("channel." + method + ".latency_us");
+        return context -> {
+            long startedAt = System.nanoTime();
             try {
-                Log.d(TAG, "Method call received: " + call.method);
-                methodHandlers.getOrDefault(call.method, this::handleUnknown)
-                        .accept(new MethodCallContext(call, result));
-            } catch (Exception e) {
-                Log.e(TAG, "Error handling method call: " + call.method, e);
-                result.error("EXCEPTION", e.getMessage(), e.getStackTrace());
+                handler.accept(context);
+            } finally {
+                latency.record((System.nanoTime() - startedAt) / 1000);
             }
-        });
+        };
     }
 
     public void handleConnectToBoard(MethodCallContext context) {
@@ -60,41 +110,81 @@ public class MethodChannelHandler {
             return;
         }
 
-        if (bluetoothManager.isConnecting()) {
+        if (sessions.isConnecting(mac)) {
             context.result().error("ALREADY_CONNECTING", "Already attempting to connect to a device", null);
             return;
         }
 
+        Map<?, ?> profile = context.call().argument("profile");
+        Map<?, ?> source = context.call().argument("source");
+
         Log.i(TAG, "Connecting to device: " + mac);
-        bluetoothManager.connectToDevice(mac);
+        sessions.connect(mac, SensorProfile.fromArguments(profile), SampleSource.fromArguments(source));
         context.result().success("Attempting to connect to: " + mac);
     }
 
     public void handleDisconnectFromBoard(MethodCallContext context) {
-        Log.i(TAG, "Disconnecting from device");
-        bluetoothManager.disconnectFromBoard();
-        context.result().success("Disconnected from device");
+        String mac = context.call().argument("macAddress");
+        Log.i(TAG, "Disconnecting from " + (mac == null ? "all devices" : mac));
+        var disconnect = mac == null ? sessions.disconnectAll() : sessions.disconnect(mac);
+        disconnect.continueWith(task -> {
+            context.result().success("Disconnected from device");
+            return null;
+        }, Task.UI_THREAD_EXECUTOR);
+    }
+
+    private static String consumerArgument(MethodCallContext context) {
+        String consumer = context.call().argument("consumer");
+        return consumer == null || consumer.isEmpty() ? MeasurementHandler.DEFAULT_CONSUMER : consumer;
+    }
+
+    // Calls without a "macAddress" argument go to the board connected first.
+    private BluetoothConnectionManager sessionArgument(MethodCallContext context) {
+        return sessions.session(context.call().argument("macAddress"));
     }
 
     public void handleGetModuleData(MethodCallContext context) {
-        if (!bluetoothManager.isConnected()) {
-            context.result().success(new HashMap<String, List<List<Object>>>());
-            return;
-        }
+        var session = sessionArgument(context);
+        context.result().success(session == null ? Map.of() : session.drain(consumerArgument(context)).toMeasurementMap());
+    }
 
-        Map<String, List<List<Object>>> data = bluetoothManager.getModuleData();
-        context.result().success(data);
-        bluetoothManager.clearMeasurements();
+    public void handleGetModuleDataPacked(MethodCallContext context) {
+        var session = sessionArgument(context);
+        context.result().success(session == null ? Map.of() : session.drain(consumerArgument(context)).toPackedMap());
+    }
+
+    public void handleGetDevicesDataPacked(MethodCallContext context) {
+        Map<String, Map<String, byte[]>> devices = new HashMap<>();
+        sessions.drainAll(consumerArgument(context))
+                .forEach((macAddress, snapshot) -> devices.put(macAddress, snapshot.toPackedMap()));
+        context.result().success(devices);
     }
 
     public void handleGetBatteryLevel(MethodCallContext context) {
-        if (!bluetoothManager.isConnected()) {
+        var session = sessionArgument(context);
+        if (session == null || !session.isConnected()) {
             context.result().success(0);
             return;
         }
 
-        bluetoothManager.updateBatteryLevel();
-        context.result().success(bluetoothManager.getBatteryLevel());
+        session.updateBatteryLevel();
+        context.result().success(session.getBatteryLevel());
+    }
+
+    public void handleAckSampleBatch(MethodCallContext context) {
+        Number sequence = context.call().argument("sequence");
+        sampleStreamHandler.acknowledge(sequence == null ? -1 : sequence.longValue());
+        context.result().success(null);
+    }
+
+    public void handleConfigureUploader(MethodCallContext context) {
+        uploader.configure(UploadConfig.fromArguments(
+                context.call().arguments instanceof Map<?, ?> arguments ? arguments : null));
+        context.result().success(uploader.isRunning());
+    }
+
+    public void handleGetMetrics(MethodCallContext context) {
+        context.result().success(PluginMetrics.shared().snapshot());
     }
 
     public void handleUnknown(MethodCallContext context) {
@@ -114,10 +204,14 @@ public class MethodChannelHandler {
         }
     }
 
-    public void notifyDisconnection(String reason) {
+    public void notifyDisconnection(String macAddress, String reason) {
         if (methodChannel != null) {
-            Log.i(TAG, "Notifying disconnection: " + reason);
-            methodChannel.invokeMethod(handleBoardDisconnectionFunction, reason);
+            Map<String, Object> data = new HashMap<>();
+            data.put("macAddress", macAddress);
+            data.put("reason", reason);
+
+            Log.i(TAG, "Notifying disconnection of " + macAddress + ": " + reason);
+            methodChannel.invokeMethod(handleBoardDisconnectionFunction, data);
         }
     }
 }
\ No newline at end of file
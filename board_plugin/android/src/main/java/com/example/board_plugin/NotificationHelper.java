@@ -6,6 +6,9 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
@@ -22,21 +25,51 @@ public class NotificationHelper {
     public static final int BT_DISCONNECTION_NOTIFICATION_ID = 1004;
     public static final int BATTERY_ALERT_THRESHOLD = 20;
     public static final long BATTERY_NOTIFICATION_MIN_INTERVAL = 1800000; // 30 minutes
+    public static final long FOREGROUND_UPDATE_MIN_INTERVAL = 5000;
+    public static final long DISCONNECTION_NOTIFICATION_MIN_INTERVAL = 30000;
+    public static final String DISCONNECT_ACTION = "com.example.ppwd_frontend.DISCONNECT";
     private static final String TAG = "NotificationHelper";
+
+    private static NotificationHelper instance;
+
     private final Context context;
     private final NotificationManager notificationManager;
     private final int iconResId;
-
-    public NotificationHelper(Context context, int iconResId) {
+    private final PendingIntent contentPendingIntent;
+    private final PendingIntent disconnectPendingIntent;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable deferredForegroundUpdate = this::postForegroundUpdate;
+
+    // What the foreground notification currently shows, and what it should show next.
+    private String shownForegroundText;
+    private String pendingMacAddress;
+    private int pendingBatteryLevel;
+    private long lastForegroundUpdate = 0;
+    private long lastDisconnectionNotification = 0;
+
+    private NotificationHelper(Context context, int iconResId) {
         this.context = context;
         this.notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
         this.iconResId = iconResId;
+        this.contentPendingIntent = PendingIntent.getActivity(context, 0,
+                new Intent(), PendingIntent.FLAG_IMMUTABLE);
+        this.disconnectPendingIntent = PendingIntent.getBroadcast(context, 0,
+                new Intent(DISCONNECT_ACTION), PendingIntent.FLAG_IMMUTABLE);
 
         createForegroundChannel();
         createBatteryChannel();
         createStatusChannel();
     }
 
+    // Channels and PendingIntents are created once per process.
+    public static synchronized NotificationHelper getInstance(Context context) {
+        if (instance == null) {
+            var appContext = context.getApplicationContext();
+            instance = new NotificationHelper(appContext, ResourceHelper.getAppIconResourceId(appContext));
+        }
+        return instance;
+    }
+
     private void createForegroundChannel() {
         NotificationChannel channel = new NotificationChannel(
                 FOREGROUND_CHANNEL_ID,
@@ -78,11 +111,7 @@ public class NotificationHelper {
         }
     }
 
-    public Notification createForegroundNotification(String macAddress, int batteryLevel, PendingIntent disconnectPendingIntent) {
-        Intent notificationIntent = new Intent();
-        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0,
-                notificationIntent, PendingIntent.FLAG_IMMUTABLE);
-
+    private static String foregroundText(String macAddress, int batteryLevel) {
         var contentText = "Connected to " + macAddress;
         if (batteryLevel > 0) {
             contentText += " | Battery: " + batteryLevel + "%";
@@ -91,31 +120,36 @@ public class NotificationHelper {
                 contentText += " ⚠️";
             }
         }
+        return contentText;
+    }
 
+    public synchronized Notification createForegroundNotification(String macAddress, int batteryLevel) {
+        shownForegroundText = foregroundText(macAddress, batteryLevel);
+        lastForegroundUpdate = SystemClock.elapsedRealtime();
+        return buildForegroundNotification(shownForegroundText);
+    }
+
+    private Notification buildForegroundNotification(String contentText) {
         return new NotificationCompat.Builder(context, FOREGROUND_CHANNEL_ID)
                 .setContentTitle("DO NOT, EVER, REMOVE THIS NOTIFICATION")
                 .setContentText(contentText)
                 .setSmallIcon(iconResId)
-                .setContentIntent(pendingIntent)
+                .setContentIntent(contentPendingIntent)
                 .addAction(android.R.drawable.ic_menu_close_clear_cancel, "Disconnect", disconnectPendingIntent)
                 .setOngoing(true)
                 .build();
     }
 
-    public void showBatteryLowNotification(int batteryLevel, PendingIntent disconnectPendingIntent) {
+    public void showBatteryLowNotification(int batteryLevel) {
         Log.i(TAG, "Showing battery low notification: " + batteryLevel + "%");
 
         if (notificationManager == null) return;
 
-        Intent notificationIntent = new Intent();
-        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0,
-                notificationIntent, PendingIntent.FLAG_IMMUTABLE);
-
         Notification notification = new NotificationCompat.Builder(context, BATTERY_CHANNEL_ID)
                 .setContentTitle("Battery Low Alert")
                 .setContentText("Warning: Battery has fallen below " + batteryLevel + "%. Charge now, if life itself is dear to you!")
                 .setSmallIcon(iconResId)
-                .setContentIntent(pendingIntent)
+                .setContentIntent(contentPendingIntent)
                 .addAction(android.R.drawable.ic_menu_close_clear_cancel, "Disconnect", disconnectPendingIntent)
                 .setPriority(NotificationCompat.PRIORITY_HIGH)
                 .setCategory(NotificationCompat.CATEGORY_ALARM)
@@ -130,15 +164,11 @@ public class NotificationHelper {
 
         if (notificationManager == null) return;
 
-        Intent notificationIntent = new Intent();
-        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0,
-                notificationIntent, PendingIntent.FLAG_IMMUTABLE);
-
         Notification notification = new NotificationCompat.Builder(context, STATUS_CHANNEL_ID)
                 .setContentTitle("Connection Terminated")
                 .setContentText("Fool! You have killed the app. Restore it quickly, or your phone will be formatted!")
                 .setSmallIcon(iconResId)
-                .setContentIntent(pendingIntent)
+                .setContentIntent(contentPendingIntent)
                 .setPriority(NotificationCompat.PRIORITY_HIGH)
                 .setCategory(NotificationCompat.CATEGORY_STATUS)
                 .build();
@@ -146,14 +176,18 @@ public class NotificationHelper {
         notificationManager.notify(APP_KILLED_NOTIFICATION_ID, notification);
     }
 
-    public void showBluetoothDisconnectionNotification(String reason) {
+    // A flapping link reports a drop every few seconds; one alert per interval is enough.
+    public synchronized void showBluetoothDisconnectionNotification(String reason) {
+        long now = SystemClock.elapsedRealtime();
+        if (lastDisconnectionNotification != 0
+                && now - lastDisconnectionNotification < DISCONNECTION_NOTIFICATION_MIN_INTERVAL) {
+            Log.d(TAG, "Skipping Bluetooth disconnection notification, one was shown recently: " + reason);
+            return;
+        }
         Log.i(TAG, "Showing Bluetooth disconnection notification. Reason: " + reason);
 
         if (notificationManager == null) return;
-
-        Intent notificationIntent = new Intent();
-        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0,
-                notificationIntent, PendingIntent.FLAG_IMMUTABLE);
+        lastDisconnectionNotification = now;
 
         Notification notification = new NotificationCompat.Builder(context, STATUS_CHANNEL_ID)
                 .setContentTitle("Bluetooth Connection Lost")
@@ -161,7 +195,7 @@ public class NotificationHelper {
                 .setStyle(new NotificationCompat.BigTextStyle()
                         .bigText("Betrayed by Bluetooth! Your precious connection has vanished into the digital void. Reconnect now, or forever wander in data darkness!\n\nReason: " + reason))
                 .setSmallIcon(iconResId)
-                .setContentIntent(pendingIntent)
+                .setContentIntent(contentPendingIntent)
                 .setPriority(NotificationCompat.PRIORITY_HIGH)
                 .setCategory(NotificationCompat.CATEGORY_ERROR)
                 .setAutoCancel(true)
@@ -170,21 +204,46 @@ public class NotificationHelper {
         notificationManager.notify(BT_DISCONNECTION_NOTIFICATION_ID, notification);
     }
 
-    public void updateForegroundNotification(String macAddress, int batteryLevel, PendingIntent disconnectPendingIntent) {
-        if (notificationManager != null) {
-            notificationManager.notify(FOREGROUND_NOTIFICATION_ID,
-                    createForegroundNotification(macAddress, batteryLevel, disconnectPendingIntent));
+    // Only posts when the visible text changes, and at most once per interval; a change arriving
+    // sooner is held back and posted with whatever is latest when the interval ends.
+    public synchronized void updateForegroundNotification(String macAddress, int batteryLevel) {
+        if (notificationManager == null) return;
+
+        pendingMacAddress = macAddress;
+        pendingBatteryLevel = batteryLevel;
+        long wait = lastForegroundUpdate + FOREGROUND_UPDATE_MIN_INTERVAL - SystemClock.elapsedRealtime();
+        mainHandler.removeCallbacks(deferredForegroundUpdate);
+        if (wait > 0) {
+            mainHandler.postDelayed(deferredForegroundUpdate, wait);
+        } else {
+            postForegroundUpdate();
         }
     }
 
-    public long checkAndNotifyLowBattery(int currentBatteryLevel, int previousBatteryLevel, long lastNotificationTime, PendingIntent disconnectPendingIntent) {
+    private synchronized void postForegroundUpdate() {
+        var contentText = foregroundText(pendingMacAddress, pendingBatteryLevel);
+        if (contentText.equals(shownForegroundText)) {
+            return;
+        }
+        shownForegroundText = contentText;
+        lastForegroundUpdate = SystemClock.elapsedRealtime();
+        notificationManager.notify(FOREGROUND_NOTIFICATION_ID, buildForegroundNotification(contentText));
+    }
+
+    // The foreground notification goes away with its service; drop anything still held back.
+    public synchronized void cancelForegroundUpdates() {
+        mainHandler.removeCallbacks(deferredForegroundUpdate);
+        shownForegroundText = null;
+    }
+
+    public long checkAndNotifyLowBattery(int currentBatteryLevel, int previousBatteryLevel, long lastNotificationTime) {
         if (currentBatteryLevel <= BATTERY_ALERT_THRESHOLD && currentBatteryLevel > 0) {
             long currentTime = System.currentTimeMillis();
 
             if (previousBatteryLevel > BATTERY_ALERT_THRESHOLD || currentTime - lastNotificationTime > BATTERY_NOTIFICATION_MIN_INTERVAL) {
 
                 Log.i(TAG, "Battery dropped below alert threshold: " + currentBatteryLevel + "%");
-                showBatteryLowNotification(currentBatteryLevel, disconnectPendingIntent);
+                showBatteryLowNotification(currentBatteryLevel);
                 return currentTime;
             }
         }
@@ -0,0 +1,119 @@
+package com.example.board_plugin;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.board_plugin.connection.BoardSessionRegistry;
+import com.example.board_plugin.measurement.MeasurementSnapshot;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+
+public class SampleStreamHandler implements EventChannel.StreamHandler {
+    public static final String CHANNEL = "flutter.native/board/samples";
+    public static final String CONSUMER = "stream";
+    private static final String TAG = "SampleStreamHandler";
+    private static final long DEFAULT_INTERVAL_MS = 1000;
+    private static final int DEFAULT_MAX_SAMPLES = 500;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private final BoardSessionRegistry sessions;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+
+    private EventChannel.EventSink eventSink;
+    private long intervalMs = DEFAULT_INTERVAL_MS;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private long nextBatchSequence = 0;
+    private long acknowledgedSequence = -1;
+    private boolean holdingSamples = false;
+
+    public SampleStreamHandler(BoardSessionRegistry sessions) {
+        this.sessions = sessions;
+    }
+
+    public static SampleStreamHandler register(BinaryMessenger messenger, BoardSessionRegistry sessions) {
+        var handler = new SampleStreamHandler(sessions);
+        new EventChannel(messenger, CHANNEL).setStreamHandler(handler);
+        return handler;
+    }
+
+    private static int intArgument(Object arguments, String key, int defaultValue) {
+        if (arguments instanceof Map<?, ?> map && map.get(key) instanceof Number value) {
+            return value.intValue();
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+        intervalMs = intArgument(arguments, "intervalMs", (int) DEFAULT_INTERVAL_MS);
+        maxInFlight = intArgument(arguments, "maxInFlight", DEFAULT_MAX_IN_FLIGHT);
+        int maxSamples = intArgument(arguments, "maxSamples", DEFAULT_MAX_SAMPLES);
+        Log.i(TAG, "Sample stream started: every " + intervalMs + " ms or " + maxSamples + " samples");
+
+        eventSink = events;
+        acknowledgedSequence = nextBatchSequence - 1;
+        sessions.registerConsumer(CONSUMER);
+        sessions.setPendingThresholdListener(CONSUMER, maxSamples, () -> mainHandler.post(flushRunnable));
+        mainHandler.postDelayed(flushRunnable, intervalMs);
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+        Log.i(TAG, "Sample stream cancelled");
+        sessions.setPendingThresholdListener(CONSUMER, Integer.MAX_VALUE, null);
+        sessions.unregisterConsumer(CONSUMER);
+        mainHandler.removeCallbacks(flushRunnable);
+        eventSink = null;
+    }
+
+    // Acknowledgements are cumulative, so a lost ack is repaired by the next one. They arrive on
+    // the method channel's background queue; the stream state belongs to the main thread.
+    public void acknowledge(long batchSequence) {
+        mainHandler.post(() -> {
+            acknowledgedSequence = Math.max(acknowledgedSequence, batchSequence);
+            if (holdingSamples && eventSink != null) {
+                flush();
+            }
+        });
+    }
+
+    private void flush() {
+        mainHandler.removeCallbacks(flushRunnable);
+        if (eventSink == null) {
+            return;
+        }
+
+        long inFlight = nextBatchSequence - 1 - acknowledgedSequence;
+        holdingSamples = inFlight >= maxInFlight;
+        if (holdingSamples) {
+            Log.d(TAG, "Dart has " + inFlight + " unacknowledged batches, holding samples in the native buffer");
+        } else {
+            emit(sessions.drainAll(CONSUMER));
+        }
+        mainHandler.postDelayed(flushRunnable, intervalMs);
+    }
+
+    // "samples" keeps carrying the primary board for single-board listeners; "devices" is only
+    // added when more than one board is connected, keyed by MAC address.
+    private void emit(Map<String, MeasurementSnapshot> snapshots) {
+        if (snapshots.values().stream().allMatch(MeasurementSnapshot::isEmpty)) {
+            return;
+        }
+        Map<String, Object> event = new HashMap<>();
+        event.put("sequence", nextBatchSequence++);
+        var primarySnapshot = snapshots.get(sessions.primaryMacAddress());
+        event.put("samples", primarySnapshot == null ? Map.of() : primarySnapshot.toPackedMap());
+        if (snapshots.size() > 1) {
+            Map<String, Map<String, byte[]>> devices = new HashMap<>();
+            snapshots.forEach((macAddress, snapshot) -> devices.put(macAddress, snapshot.toPackedMap()));
+            event.put("devices", devices);
+        }
+        eventSink.success(event);
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.board_plugin.connection;
+
+import java.util.Random;
+
+public record BackoffPolicy(long initialDelayMs, long maxDelayMs, double multiplier, double jitter,
+                            int maxAttempts) {
+
+    public static final BackoffPolicy DEFAULT = new BackoffPolicy(1000, 5 * 60 * 1000, 2.0, 0.5, 10);
+
+    public BackoffPolicy {
+        if (initialDelayMs <= 0 || maxDelayMs < initialDelayMs) {
+            throw new IllegalArgumentException("Invalid backoff delays: " + initialDelayMs + ".." + maxDelayMs);
+        }
+        if (multiplier < 1.0) {
+            throw new IllegalArgumentException("Backoff multiplier must be at least 1: " + multiplier);
+        }
+        if (jitter < 0.0 || jitter > 1.0) {
+            throw new IllegalArgumentException("Backoff jitter must be between 0 and 1: " + jitter);
+        }
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Max attempts must be positive: " + maxAttempts);
+        }
+    }
+
+    // Attempt numbers start at 1. The jittered part keeps a fleet of phones that lost the same
+    // board from retrying in lockstep; the fixed part keeps the delay from collapsing to zero.
+    public long delayFor(int attempt, Random random) {
+        double exponential = initialDelayMs * Math.pow(multiplier, Math.max(0, attempt - 1));
+        double capped = Math.min(maxDelayMs, exponential);
+        return Math.round(capped * (1.0 - jitter) + capped * jitter * random.nextDouble());
+    }
+}
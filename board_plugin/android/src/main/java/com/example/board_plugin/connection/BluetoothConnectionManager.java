@@ -13,40 +13,57 @@ import android.os.Looper;
 import android.util.Log;
 
 import com.example.board_plugin.NotificationHelper;
-import com.example.board_plugin.ResourceHelper;
+import com.example.board_plugin.measurement.MeasurementHandler;
+import com.example.board_plugin.measurement.MeasurementSnapshot;
+import com.example.board_plugin.metrics.Counter;
+import com.example.board_plugin.metrics.LatencyHistogram;
+import com.example.board_plugin.metrics.PluginMetrics;
+import com.example.board_plugin.setup.RouteCache;
+import com.example.board_plugin.setup.SampleSource;
+import com.example.board_plugin.setup.SensorProfile;
 import com.example.board_plugin.setup.SensorSetupManager;
 import com.mbientlab.metawear.android.BtleService;
 import com.mbientlab.metawear.module.Settings;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Random;
 
-public class BluetoothConnectionManager implements ServiceConnection {
+import bolts.Task;
+import bolts.TaskCompletionSource;
+
+public class BluetoothConnectionManager implements ServiceConnection, ConnectionStateMachine.Actions {
     private static final String TAG = "BluetoothManager";
-    private static final int MAX_CONNECTION_RETRIES = 3;
-    private static final long CONNECTION_RETRY_DELAY_MS = 1500;
+    private static final Counter CONNECTION_ATTEMPTS = PluginMetrics.shared().counter("connection.attempts");
+    private static final Counter CONNECTION_RETRIES = PluginMetrics.shared().counter("connection.retries");
+    private static final Counter CONNECTIONS_ESTABLISHED = PluginMetrics.shared().counter("connection.established");
+    private static final Counter CONNECTIONS_LOST = PluginMetrics.shared().counter("connection.lost");
+    private static final LatencyHistogram CONNECTION_SETUP_MS = PluginMetrics.shared().histogram("connection.setup_ms");
 
     private final Context context;
     private final Handler mainHandler;
-    private final AtomicBoolean isConnecting = new AtomicBoolean(false);
     private final SensorSetupManager setupManager;
+    private final ConnectionStateMachine stateMachine;
 
     private BtleService.LocalBinder serviceBinder;
     private String macAddress = "";
-    private boolean isConnected = false;
-    private int connectionRetries = 0;
     private boolean isServiceBound = false;
     private ConnectionCallback connectionCallback;
-
-    private boolean isShutdownRequested = false;
+    private volatile Task<Void> pendingDisconnect;
+    private volatile long attemptStartedAt = 0;
 
 
     public BluetoothConnectionManager(Context context, SensorSetupManager setupManager) {
+        this(context, setupManager, BackoffPolicy.DEFAULT);
+    }
+
+    public BluetoothConnectionManager(Context context, SensorSetupManager setupManager, BackoffPolicy backoffPolicy) {
         this.context = context.getApplicationContext();
         this.setupManager = setupManager;
+        this.setupManager.setRouteCache(new RouteCache(this.context));
         this.mainHandler = new Handler(Looper.getMainLooper());
+        this.stateMachine = new ConnectionStateMachine(
+                this, new HandlerScheduler(mainHandler), backoffPolicy, new Random());
     }
 
     public void setConnectionCallback(ConnectionCallback callback) {
@@ -54,32 +71,38 @@ public class BluetoothConnectionManager implements ServiceConnection {
     }
 
     public boolean isConnected() {
-        return isConnected;
+        return stateMachine.state() == ConnectionState.STREAMING;
     }
 
     public boolean isConnecting() {
-        return isConnecting.get();
+        return stateMachine.isActive();
+    }
+
+    public String getMacAddress() {
+        return macAddress;
+    }
+
+    public ConnectionState getConnectionState() {
+        return stateMachine.state();
     }
 
     public void connectToDevice(String macAddress) {
         Log.i(TAG, "Connect to device called for: " + macAddress);
-        isShutdownRequested = false;
 
-        if (isConnecting.get()) {
+        if (stateMachine.isActive()) {
             Log.e(TAG, "Already attempting to connect to a device");
             if (connectionCallback != null) {
-                connectionCallback.onDisconnection("Already attempting to connect to a device");
+                connectionCallback.onDisconnection(macAddress, "Already attempting to connect to a device");
             }
             return;
         }
 
-        if (isConnected || isServiceBound) {
+        if (isConnected() || isServiceBound || pendingDisconnect != null) {
             Log.i(TAG, "Disconnecting from previous connection before reconnecting");
-            disconnectFromBoard();
-
-            mainHandler.postDelayed(() -> {
+            disconnectFromBoard().continueWith(task -> {
                 startNewConnection(macAddress);
-            }, 500);
+                return null;
+            }, Task.UI_THREAD_EXECUTOR);
         } else {
             startNewConnection(macAddress);
         }
@@ -87,15 +110,26 @@ public class BluetoothConnectionManager implements ServiceConnection {
 
     private void startNewConnection(String macAddress) {
         this.macAddress = macAddress;
-        connectionRetries = 0;
         setupManager.clear();
-        isConnecting.set(true);
+        // The previous cycle may have run against a sample source, which only pretends to bind.
+        if (!isServiceBound) {
+            stateMachine.onServiceUnbound();
+        }
 
         Log.i(TAG, "Starting new connection to: " + macAddress);
-        connectToService();
+        stateMachine.start();
     }
 
-    public void connectToService() {
+    @Override
+    public void bindService() {
+        if (setupManager.hasSampleSource()) {
+            mainHandler.post(stateMachine::onServiceBound);
+            return;
+        }
+        if (isServiceBound) {
+            Log.i(TAG, "Already bound to BtleService, waiting for it to connect");
+            return;
+        }
         try {
             Log.i(TAG, "Binding to BtleService");
             isServiceBound = context.bindService(
@@ -114,207 +148,255 @@ public class BluetoothConnectionManager implements ServiceConnection {
 
     private void handleError(String message) {
         Log.e(TAG, message);
-        isConnecting.set(false);
-        if (connectionCallback != null) {
-            connectionCallback.onDisconnection(message);
-        }
+        stateMachine.onFailure(message);
     }
 
-    private void reset() {
-        isConnected = false;
-        isConnecting.set(false);
-        setupManager.clear();
+    private void handleError(int attemptId, String message) {
+        Log.e(TAG, message);
+        stateMachine.onFailure(attemptId, message);
     }
 
-    public void disconnectFromBoard() {
+    // Never blocks: pending reconnects are cancelled straight away and the returned task completes
+    // on the main thread once the board has disconnected and the service is unbound.
+    public Task<Void> disconnectFromBoard() {
         Log.i(TAG, "Disconnecting from board");
-        isShutdownRequested = true;
+        stateMachine.shutdown();
+        setupManager.stopSampleSource();
 
+        if (pendingDisconnect != null) {
+            return pendingDisconnect;
+        }
+
+        Task<Void> boardDisconnect = Task.forResult(null);
         if (setupManager.getBoard() != null) {
             try {
                 if (setupManager.getBoard().isConnected()) {
-                    Log.i(TAG, "Board is connected, tearing down routes");
-                    setupManager.getBoard().tearDown();
-
-                    try {
-                        Log.i(TAG, "Disconnecting board and waiting for completion");
-                        setupManager.getBoard().disconnectAsync().waitForCompletion();
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error waiting for disconnection to complete", e);
-                    }
+                    Log.i(TAG, "Board is connected, stopping sensors");
+                    setupManager.tearDown();
+                    boardDisconnect = setupManager.getBoard().disconnectAsync();
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error disconnecting from board", e);
             }
         }
 
-        reset();
+        var completion = new TaskCompletionSource<Void>();
+        pendingDisconnect = completion.getTask();
+        boardDisconnect.continueWith(task -> {
+            if (task.isFaulted()) {
+                Log.e(TAG, "Error waiting for disconnection to complete", task.getError());
+            }
+            setupManager.clear();
+            unbindService();
+            pendingDisconnect = null;
+            Log.i(TAG, "Disconnected from board");
+            completion.setResult(null);
+            return null;
+        }, Task.UI_THREAD_EXECUTOR);
+        return completion.getTask();
+    }
 
+    private void unbindService() {
         if (isServiceBound) {
             try {
                 Log.i(TAG, "Unbinding from service");
                 context.unbindService(this);
-                isServiceBound = false;
             } catch (Exception e) {
                 Log.e(TAG, "Error unbinding service", e);
             }
+            isServiceBound = false;
         }
+        stateMachine.onServiceUnbound();
     }
 
     @Override
     public void onServiceConnected(ComponentName name, IBinder service) {
         Log.i(TAG, "Service connected");
         serviceBinder = (BtleService.LocalBinder) service;
-        connectToBoard();
+        stateMachine.onServiceBound();
     }
 
     @Override
     public void onServiceDisconnected(ComponentName name) {
         Log.i(TAG, "BT Service Disconnected");
 
-        reset();
-        isServiceBound = false;
-
-        int appIconId = ResourceHelper.getAppIconResourceId(context);
-        NotificationHelper notificationHelper = new NotificationHelper(context, appIconId);
-        notificationHelper.showBluetoothDisconnectionNotification("Bluetooth service disconnected");
+        setupManager.clear();
+        // Drop the stale binding so the next attempt binds again from scratch.
+        unbindService();
 
-        if (!isShutdownRequested && connectionCallback != null) {
-            connectionCallback.onDisconnection("Bluetooth service disconnected");
+        NotificationHelper.getInstance(context)
+                .showBluetoothDisconnectionNotification("Bluetooth service disconnected");
 
-            mainHandler.postDelayed(() -> {
-                if (!isShutdownRequested && !macAddress.isEmpty()) {
-                    Log.i(TAG, "Service disconnected unexpectedly, attempting to reconnect");
-                    connectToDevice(macAddress);
-                }
-            }, 5000);
-        }
+        stateMachine.onServiceLost("Bluetooth service disconnected");
     }
 
-    private BluetoothDevice getBluetoothDevice() {
+    private BluetoothDevice getBluetoothDevice(int attemptId) {
         try {
             BluetoothManager btManager = (BluetoothManager)
                     context.getSystemService(Context.BLUETOOTH_SERVICE);
 
             if (btManager == null) {
-                handleError("Bluetooth manager unavailable");
+                stateMachine.abort(attemptId, "Bluetooth manager unavailable");
                 return null;
             }
 
             BluetoothAdapter adapter = btManager.getAdapter();
             if (adapter == null) {
-                handleError("Bluetooth adapter unavailable");
+                stateMachine.abort(attemptId, "Bluetooth adapter unavailable");
                 return null;
             }
 
             if (!adapter.isEnabled()) {
-                handleError("Bluetooth is turned off");
+                handleError(attemptId, "Bluetooth is turned off");
                 return null;
             }
 
             try {
                 return adapter.getRemoteDevice(macAddress);
             } catch (IllegalArgumentException e) {
-                handleError("Invalid MAC address: " + macAddress);
+                stateMachine.abort(attemptId, "Invalid MAC address: " + macAddress);
                 return null;
             }
         } catch (Exception e) {
-            handleError("Error getting Bluetooth device: " + e.getMessage());
+            handleError(attemptId, "Error getting Bluetooth device: " + e.getMessage());
             return null;
         }
     }
 
-    private void handleConnectionFailure(Throwable error) {
-        Log.e(TAG, "Connection failed", error);
+    @Override
+    public void connectBoard(int attemptId) {
+        if (setupManager.hasSampleSource()) {
+            mainHandler.post(() -> stateMachine.onBoardConnected(attemptId));
+            return;
+        }
+        try {
+            var device = getBluetoothDevice(attemptId);
+            if (device == null) {
+                return;
+            }
+
+            setupManager.setBoard(serviceBinder.getMetaWearBoard(device));
+            setupManager.restoreBoardState();
 
-        if (connectionRetries < MAX_CONNECTION_RETRIES) {
-            connectionRetries++;
-            Log.d(TAG, "Retry " + connectionRetries + "/" + MAX_CONNECTION_RETRIES);
+            setupDisconnectHandler(attemptId);
 
-            mainHandler.postDelayed(() -> {
-                if (isConnecting.get()) {
-                    connectToBoard();
+            Log.d(TAG, "Connecting to device: " + macAddress);
+            setupManager.getBoard().connectAsync().continueWith(task -> {
+                if (task.isFaulted()) {
+                    Log.e(TAG, "Connection failed", task.getError());
+                    stateMachine.onFailure(attemptId, "Connection failed");
+                } else {
+                    stateMachine.onBoardConnected(attemptId);
                 }
-            }, CONNECTION_RETRY_DELAY_MS);
-        } else {
-            handleError("Failed to connect after " + MAX_CONNECTION_RETRIES + " attempts");
+                return null;
+            });
+        } catch (Exception e) {
+            handleError(attemptId, "Connection error: " + e.getMessage());
         }
     }
 
-    private void handleConnectionSuccess() {
+    @Override
+    public void configureBoard(int attemptId) {
         Log.i(TAG, "Successfully connected to device");
-        connectionRetries = 0;
-        isConnected = true;
         setupManager.start();
 
-        setupSensors();
+        if (setupManager.hasSampleSource()) {
+            setupManager.startSampleSource(reason -> onSampleSourceDisconnected(attemptId, reason));
+            mainHandler.post(() -> stateMachine.onConfigured(attemptId));
+            return;
+        }
+
+        // Routes from the previous connection may still be logging on the board; pull the gap out
+        // of the logger before reattaching to them.
+        var setup = setupManager.hasLoggedSamples()
+                ? setupManager.downloadLoggedSamples().continueWithTask(task -> setupSensors())
+                : setupSensors();
         readBatteryLevel();
 
-        mainHandler.postDelayed(() -> {
-            isConnecting.set(false);
-            if (connectionCallback != null) {
+        setup.continueWith(task -> {
+            if (task.isFaulted()) {
+                Log.e(TAG, "Sensor setup failed", task.getError());
+                stateMachine.onFailure(attemptId, "Sensor setup failed: " + task.getError().getMessage());
+            } else {
+                stateMachine.onConfigured(attemptId);
+            }
+            return null;
+        }, Task.UI_THREAD_EXECUTOR);
+    }
+
+    @Override
+    public void onStateChanged(ConnectionState previous, ConnectionState next, String reason) {
+        recordTransition(previous, next);
+        var mac = macAddress;
+        mainHandler.post(() -> {
+            if (connectionCallback == null) {
+                return;
+            }
+            if (next == ConnectionState.STREAMING) {
                 connectionCallback.onConnectionSuccess(
-                        macAddress,
+                        mac,
                         setupManager.getBatteryLevel(),
                         setupManager.getActiveSensors()
                 );
+            } else if (next == ConnectionState.IDLE
+                    || (previous == ConnectionState.STREAMING && next == ConnectionState.BACKOFF)) {
+                connectionCallback.onDisconnection(mac, reason);
             }
-        }, 1000);
+        });
     }
 
+    private void recordTransition(ConnectionState previous, ConnectionState next) {
+        if ((next == ConnectionState.BINDING || next == ConnectionState.CONNECTING)
+                && previous != ConnectionState.BINDING) {
+            CONNECTION_ATTEMPTS.increment();
+            attemptStartedAt = System.nanoTime();
+            var measurementHandler = setupManager.getMeasurementHandler();
+            if (measurementHandler != null) {
+                measurementHandler.armFirstSampleTimer();
+            }
+        } else if (next == ConnectionState.STREAMING) {
+            CONNECTIONS_ESTABLISHED.increment();
+            if (attemptStartedAt != 0) {
+                CONNECTION_SETUP_MS.record((System.nanoTime() - attemptStartedAt) / 1_000_000);
+                attemptStartedAt = 0;
+            }
+        } else if (next == ConnectionState.BACKOFF) {
+            CONNECTION_RETRIES.increment();
+            if (previous == ConnectionState.STREAMING) {
+                CONNECTIONS_LOST.increment();
+            }
+        }
+    }
 
-    private void connectToBoard() {
-        try {
-            var device = getBluetoothDevice();
-            if (device == null) {
+    private void onSampleSourceDisconnected(int attemptId, String reason) {
+        mainHandler.post(() -> {
+            if (stateMachine.currentAttemptId() != attemptId) {
                 return;
             }
-
-            setupManager.setBoard(serviceBinder.getMetaWearBoard(device));
-
-            setupDisconnectHandler();
-
-            Log.d(TAG, "Connecting to device: " + macAddress);
-            setupManager.getBoard().connectAsync().continueWith(task -> {
-                if (task.isFaulted()) {
-                    handleConnectionFailure(task.getError());
-                } else {
-                    handleConnectionSuccess();
-                }
-                return null;
-            });
-        } catch (Exception e) {
-            handleError("Connection error: " + e.getMessage());
-        }
+            Log.w(TAG, "Sample source disconnected: " + reason);
+            setupManager.clear();
+            stateMachine.onFailure(attemptId, reason);
+        });
     }
 
-    private void setupDisconnectHandler() {
+    private void setupDisconnectHandler(int attemptId) {
         if (setupManager.getBoard() != null) {
             setupManager.getBoard().onUnexpectedDisconnect(status -> {
                 Log.w(TAG, "MetaWear board unexpectedly disconnected with status: " + status);
 
                 mainHandler.post(() -> {
-                    if (!isShutdownRequested) {
-                        reset();
-
-                        // Show notification
-                        int appIconId = ResourceHelper.getAppIconResourceId(context);
-                        NotificationHelper notificationHelper = new NotificationHelper(context, appIconId);
-                        notificationHelper.showBluetoothDisconnectionNotification(
-                                "Device disconnected unexpectedly (status: " + status + ")"
-                        );
-
-                        if (connectionCallback != null) {
-                            connectionCallback.onDisconnection("Device disconnected unexpectedly");
-                        }
-
-                        mainHandler.postDelayed(() -> {
-                            if (!isShutdownRequested && !macAddress.isEmpty()) {
-                                Log.i(TAG, "Attempting to reconnect after unexpected disconnect");
-                                connectToDevice(macAddress);
-                            }
-                        }, 3000);
+                    // Covers shutdown too, which abandons the current attempt.
+                    if (stateMachine.currentAttemptId() != attemptId) {
+                        return;
                     }
+                    setupManager.clear();
+
+                    // Show notification
+                    NotificationHelper.getInstance(context).showBluetoothDisconnectionNotification(
+                            "Device disconnected unexpectedly (status: " + status + ")"
+                    );
+
+                    stateMachine.onFailure(attemptId, "Device disconnected unexpectedly");
                 });
             });
         }
@@ -331,25 +413,70 @@ public class BluetoothConnectionManager implements ServiceConnection {
         }
     }
 
-    private void setupSensors() {
-        if (setupManager.getBoard() == null || !isConnected) {
-            Log.w(TAG, "Cannot setup sensors: board is null or not connected");
-            return;
+    // Faults rather than completing empty, so a board that cannot be set up goes back through the
+    // state machine's backoff instead of counting as streaming.
+    private Task<Void> setupSensors() {
+        if (setupManager.getBoard() == null || !setupManager.getBoard().isConnected()) {
+            return Task.forError(new IllegalStateException("board is null or not connected"));
         }
         try {
-            setupManager.setupAccelerometer();
-            setupManager.setupGyro();
-            setupManager.setupSettings();
+            return setupManager.configureSensors();
         } catch (Exception e) {
-            Log.e(TAG, "Error setting up sensors", e);
+            return Task.forError(e);
         }
     }
 
-    public Map<String, List<List<Object>>> getModuleData() {
-        if (!isConnected || setupManager.getMeasurementHandler() == null) {
-            return new HashMap<>();
-        }
-        return setupManager.getMeasurementHandler().getMeasurementsBuffer();
+    public MeasurementSnapshot drain(String consumer) {
+        return setupManager.getMeasurementHandler().drain(consumer);
+    }
+
+    public MeasurementSnapshot drain(String consumer, long maxTimestamp) {
+        return setupManager.getMeasurementHandler().drain(consumer, maxTimestamp);
+    }
+
+    public MeasurementHandler getMeasurementHandler() {
+        return setupManager.getMeasurementHandler();
+    }
+
+    public void setSensorProfile(SensorProfile profile) {
+        setupManager.setProfile(profile);
+    }
+
+    // null streams from the MetaWear board; takes effect on the next connect.
+    public void setSampleSource(SampleSource source) {
+        setupManager.setSampleSource(source);
+    }
+
+    public void registerConsumer(String consumer) {
+        setupManager.getMeasurementHandler().registerConsumer(consumer);
+    }
+
+    public void unregisterConsumer(String consumer) {
+        setupManager.getMeasurementHandler().unregisterConsumer(consumer);
+    }
+
+    public void setPendingThresholdListener(String consumer, int threshold, Runnable listener) {
+        setupManager.getMeasurementHandler().setPendingThresholdListener(consumer, threshold, listener);
+    }
+
+    public boolean hasPendingSamples() {
+        return setupManager.getMeasurementHandler().hasPendingSamples();
+    }
+
+    public Map<String, Long> getOverflowCounts() {
+        return setupManager.getMeasurementHandler().getOverflowCounts();
+    }
+
+    public Map<String, Long> getConsumerLags() {
+        return setupManager.getMeasurementHandler().getConsumerLags();
+    }
+
+    public Map<String, Long> getIngestQueueDepths() {
+        return setupManager.getMeasurementHandler().getIngestQueueDepths();
+    }
+
+    public Map<String, Long> getIngestDropCounts() {
+        return setupManager.getMeasurementHandler().getIngestDropCounts();
     }
 
     public void clearMeasurements() {
@@ -363,7 +490,7 @@ public class BluetoothConnectionManager implements ServiceConnection {
     }
 
     public void updateBatteryLevel() {
-        if (isConnected && setupManager.getBoard() != null && setupManager.getBoard().isConnected()) {
+        if (isConnected() && setupManager.getBoard() != null && setupManager.getBoard().isConnected()) {
             Settings settings = setupManager.getBoard().getModule(Settings.class);
             if (settings != null) {
                 settings.battery().read();
@@ -372,15 +499,14 @@ public class BluetoothConnectionManager implements ServiceConnection {
     }
 
     public void checkConnectionAndReconnect() {
-        if (!isConnected && !isConnecting.get() && !isShutdownRequested && !macAddress.isEmpty()) {
-            Log.i(TAG, "Connection check detected disconnection, attempting to reconnect");
-            connectToDevice(macAddress);
+        if (!macAddress.isEmpty()) {
+            stateMachine.checkConnection();
         }
     }
 
     public interface ConnectionCallback {
         void onConnectionSuccess(String macAddress, int batteryLevel, List<String> activeSensors);
 
-        void onDisconnection(String reason);
+        void onDisconnection(String macAddress, String reason);
     }
 }
\ No newline at end of file
@@ -6,7 +6,6 @@ import android.content.Intent;
 import android.util.Log;
 
 import com.example.board_plugin.NotificationHelper;
-import com.example.board_plugin.ResourceHelper;
 
 public class BluetoothDisconnectReceiver extends BroadcastReceiver {
     private static final String TAG = "BtDisconnectReceiver";
@@ -15,12 +14,12 @@ public class BluetoothDisconnectReceiver extends BroadcastReceiver {
     public void onReceive(Context context, Intent intent) {
         Log.i(TAG, "Disconnect button pressed");
 
-        new NotificationHelper(context, ResourceHelper.getAppIconResourceId(context)).showAppKilledNotification();
+        NotificationHelper.getInstance(context).showAppKilledNotification();
 
         var serviceIntent = new Intent(context, BluetoothForegroundService.class);
         context.stopService(serviceIntent);
 
-        Intent disconnectIntent = new Intent("com.example.ppwd_frontend.DISCONNECT");
+        Intent disconnectIntent = new Intent(NotificationHelper.DISCONNECT_ACTION);
         context.sendBroadcast(disconnectIntent);
 
         try {
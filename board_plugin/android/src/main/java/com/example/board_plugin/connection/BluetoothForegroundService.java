@@ -1,26 +1,41 @@
 package com.example.board_plugin.connection;
 
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 
 import com.example.board_plugin.NotificationHelper;
-import com.example.board_plugin.ResourceHelper;
-import com.example.board_plugin.setup.SensorSetupManager;
+import com.example.board_plugin.metrics.PluginMetrics;
+import com.example.board_plugin.upload.MeasurementUploader;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.File;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 public class BluetoothForegroundService extends Service {
     private static final String TAG = "BtForegroundService";
-
-    private BluetoothConnectionManager bluetoothManager;
-    private Timer connectionCheckTimer;
-    private String connectedMacAddress;
+    private static final long HEALTHY_CHECK_INTERVAL_MS = 60000;
+    private static final long RECONNECTING_CHECK_INTERVAL_MS = 10000;
+    private static final String METRICS_FILE = "plugin_metrics.jsonl";
+
+    private BoardSessionRegistry sessions;
+    private BluetoothConnectionManager.ConnectionCallback connectionCallback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable connectionCheck = this::runConnectionCheck;
+    private final Runnable boardCheck = this::performConnectionCheck;
+    // The tick and the metrics dump run here, so the file I/O stays off the main thread.
+    private HandlerThread checkThread;
+    private Handler checkHandler;
+    // Every board currently streaming; the notification and battery checks follow the monitored one.
+    private final Set<String> connectedMacAddresses = new LinkedHashSet<>();
+    private volatile String monitoredMacAddress;
     private int batteryLevel = 0;
     private int previousBatteryLevel = 0;
     private long lastBatteryNotificationTime = 0;
@@ -31,16 +46,21 @@ public class BluetoothForegroundService extends Service {
         super.onCreate();
         Log.i(TAG, "Foreground service created");
 
-        int appIconResId = ResourceHelper.getAppIconResourceId(this);
+        checkThread = new HandlerThread(TAG);
+        checkThread.start();
+        checkHandler = new Handler(checkThread.getLooper());
 
-        notificationHelper = new NotificationHelper(this, appIconResId);
-        var setupManager = new SensorSetupManager();
-        bluetoothManager = new BluetoothConnectionManager(this, setupManager);
-        bluetoothManager.setConnectionCallback(new BluetoothConnectionManager.ConnectionCallback() {
+        notificationHelper = NotificationHelper.getInstance(this);
+        sessions = BoardSessionRegistry.shared(this);
+        sessions.setRetainedByService(true);
+        connectionCallback = new BluetoothConnectionManager.ConnectionCallback() {
             @Override
-            public void onConnectionSuccess(String macAddress, int batteryLevel, java.util.List<String> activeSensors) {
+            public void onConnectionSuccess(String macAddress, int batteryLevel, List<String> activeSensors) {
                 Log.i(TAG, "Connected to device: " + macAddress + " with battery: " + batteryLevel);
-                connectedMacAddress = macAddress;
+                connectedMacAddresses.add(macAddress);
+                if (monitoredMacAddress != null && !monitoredMacAddress.equals(macAddress)) {
+                    return;
+                }
                 previousBatteryLevel = BluetoothForegroundService.this.batteryLevel;
                 BluetoothForegroundService.this.batteryLevel = batteryLevel;
 
@@ -49,19 +69,28 @@ public class BluetoothForegroundService extends Service {
                 if (batteryLevel != previousBatteryLevel) {
                     checkBatteryLevel();
                 }
+                if (monitoredMacAddress != null) {
+                    scheduleConnectionCheck(HEALTHY_CHECK_INTERVAL_MS);
+                }
             }
 
             @Override
-            public void onDisconnection(String reason) {
-                Log.i(TAG, "Disconnected: " + reason);
-                connectedMacAddress = null;
+            public void onDisconnection(String macAddress, String reason) {
+                Log.i(TAG, "Disconnected from " + macAddress + ": " + reason);
+                connectedMacAddresses.remove(macAddress);
 
                 notificationHelper.showBluetoothDisconnectionNotification(reason);
 
-                stopForeground(true);
-                stopSelf();
+                // A dropped link is still being retried by its session, or revived by the periodic
+                // check once it gives up; only stop once no board is wanted any more.
+                if (!sessions.hasWantedSession()) {
+                    stopForegroundService();
+                } else if (monitoredMacAddress != null) {
+                    scheduleConnectionCheck(RECONNECTING_CHECK_INTERVAL_MS);
+                }
             }
-        });
+        };
+        sessions.addConnectionCallback(connectionCallback);
     }
 
     @Override
@@ -69,21 +98,18 @@ public class BluetoothForegroundService extends Service {
         Log.i(TAG, "Starting foreground service");
 
         if (intent != null && intent.hasExtra("macAddress")) {
-            connectedMacAddress = intent.getStringExtra("macAddress");
-            Log.i(TAG, "Service connecting to: " + connectedMacAddress);
-
-            Intent disconnectIntent = new Intent("com.example.ppwd_frontend.DISCONNECT");
-            PendingIntent disconnectPendingIntent = PendingIntent.getBroadcast(
-                    this, 0, disconnectIntent, PendingIntent.FLAG_IMMUTABLE);
+            var macAddress = intent.getStringExtra("macAddress");
+            Log.i(TAG, "Service connecting to: " + macAddress);
 
             startForeground(NotificationHelper.FOREGROUND_NOTIFICATION_ID,
-                    notificationHelper.createForegroundNotification(
-                            connectedMacAddress, batteryLevel, disconnectPendingIntent));
+                    notificationHelper.createForegroundNotification(macAddress, batteryLevel));
 
-            if (connectedMacAddress != null && !connectedMacAddress.isEmpty()) {
-                bluetoothManager.connectToDevice(connectedMacAddress);
+            if (macAddress != null && !macAddress.isEmpty()) {
+                monitoredMacAddress = macAddress;
+                sessions.attach(macAddress);
             }
             startConnectionChecks();
+            MeasurementUploader.shared(this).start();
         } else {
             Log.e(TAG, "No MAC address provided, stopping service");
             stopSelf();
@@ -93,37 +119,55 @@ public class BluetoothForegroundService extends Service {
     }
 
     private void startConnectionChecks() {
-        if (connectionCheckTimer != null) {
-            connectionCheckTimer.cancel();
-            connectionCheckTimer = null;
-        }
+        scheduleConnectionCheck(nextCheckDelay());
+    }
 
-        connectionCheckTimer = new Timer();
-        scheduleNextConnectionCheck();
+    // One pending tick at most: rescheduling replaces whatever was queued, so repeated start
+    // commands and connection events never stack up checks.
+    private void scheduleConnectionCheck(long delayMs) {
+        checkHandler.removeCallbacks(connectionCheck);
+        checkHandler.postDelayed(connectionCheck, delayMs);
     }
 
-    private void scheduleNextConnectionCheck() {
-        boolean isDestroyed = false;
-        if (!isDestroyed && connectionCheckTimer != null) {
-            connectionCheckTimer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    try {
-                        performConnectionCheck();
-                    } finally {
-                        scheduleNextConnectionCheck();
-                    }
-                }
-            }, 60000);
+    // Health check, battery read, notification refresh and the data-available broadcast all run
+    // in this one tick; it comes round quickly while the board is away and slowly once it streams.
+    // The board part goes to the main thread, where the sessions and the connection callbacks live.
+    private void runConnectionCheck() {
+        try {
+            mainHandler.post(boardCheck);
+            PluginMetrics.shared().dump(new File(getFilesDir(), METRICS_FILE));
+        } finally {
+            scheduleConnectionCheck(nextCheckDelay());
         }
     }
 
+    private long nextCheckDelay() {
+        var bluetoothManager = sessions.session(monitoredMacAddress);
+        return bluetoothManager != null && bluetoothManager.isConnected()
+                ? HEALTHY_CHECK_INTERVAL_MS
+                : RECONNECTING_CHECK_INTERVAL_MS;
+    }
+
+    private void stopForegroundService() {
+        Log.i(TAG, "No board left to keep connected, stopping");
+        stopForeground(true);
+        stopSelf();
+    }
+
     private void performConnectionCheck() {
+        if (!sessions.hasWantedSession()) {
+            stopForegroundService();
+            return;
+        }
+        var bluetoothManager = sessions.session(monitoredMacAddress);
+        if (bluetoothManager == null) {
+            return;
+        }
         if (!bluetoothManager.isConnected()) {
-            Log.i(TAG, "Connection lost, attempting to reconnect");
-            if (connectedMacAddress != null) {
-                bluetoothManager.connectToDevice(connectedMacAddress);
-            }
+            // Reconnects are owned by the connection state machine; this only revives a cycle
+            // that has given up.
+            Log.i(TAG, "Not connected (" + bluetoothManager.getConnectionState() + "), checking connection");
+            bluetoothManager.checkConnectionAndReconnect();
         } else {
             previousBatteryLevel = batteryLevel;
             bluetoothManager.updateBatteryLevel();
@@ -141,33 +185,37 @@ public class BluetoothForegroundService extends Service {
     }
 
     private void broadcastDataAvailable() {
-        var sensorData = bluetoothManager.getModuleData();
-
         var dataIntent = new Intent("com.example.ppwd_frontend.DATA_AVAILABLE");
-        dataIntent.putExtra("macAddress", connectedMacAddress);
+        dataIntent.putExtra("macAddress", monitoredMacAddress);
         dataIntent.putExtra("batteryLevel", batteryLevel);
-        dataIntent.putExtra("hasNewData", !sensorData.isEmpty());
+        dataIntent.putExtra("hasNewData", sessions.hasPendingSamples());
 
         Log.i(TAG, "Broadcasting data available with battery level: " + batteryLevel);
         sendBroadcast(dataIntent);
     }
 
     private void updateNotification() {
-        Intent disconnectIntent = new Intent("com.example.ppwd_frontend.DISCONNECT");
-        PendingIntent disconnectPendingIntent = PendingIntent.getBroadcast(
-                this, 0, disconnectIntent, PendingIntent.FLAG_IMMUTABLE);
-
-        notificationHelper.updateForegroundNotification(
-                connectedMacAddress, batteryLevel, disconnectPendingIntent);
+        notificationHelper.updateForegroundNotification(monitoredMacAddress, batteryLevel);
     }
 
     private void checkBatteryLevel() {
-        Intent disconnectIntent = new Intent("com.example.ppwd_frontend.DISCONNECT");
-        PendingIntent disconnectPendingIntent = PendingIntent.getBroadcast(
-                this, 0, disconnectIntent, PendingIntent.FLAG_IMMUTABLE);
-
         lastBatteryNotificationTime = notificationHelper.checkAndNotifyLowBattery(
-                batteryLevel, previousBatteryLevel, lastBatteryNotificationTime, disconnectPendingIntent);
+                batteryLevel, previousBatteryLevel, lastBatteryNotificationTime);
+    }
+
+    @Override
+    public void onDestroy() {
+        Log.i(TAG, "Foreground service destroyed");
+        // The sessions stay in the registry; whoever asked for the service to stop decides
+        // whether the boards are disconnected as well.
+        checkHandler.removeCallbacks(connectionCheck);
+        mainHandler.removeCallbacks(boardCheck);
+        checkThread.quitSafely();
+        notificationHelper.cancelForegroundUpdates();
+        MeasurementUploader.shared(this).stop();
+        sessions.removeConnectionCallback(connectionCallback);
+        sessions.setRetainedByService(false);
+        super.onDestroy();
     }
 
     @Nullable
@@ -180,7 +228,7 @@ public class BluetoothForegroundService extends Service {
     public void onTaskRemoved(Intent rootIntent) {
         super.onTaskRemoved(rootIntent);
 
-        if (connectedMacAddress != null) {
+        if (!connectedMacAddresses.isEmpty()) {
             updateNotification();
         }
     }
@@ -0,0 +1,271 @@
+package com.example.board_plugin.connection;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.board_plugin.measurement.MeasurementHandler;
+import com.example.board_plugin.measurement.MeasurementSnapshot;
+import com.example.board_plugin.metrics.PluginMetrics;
+import com.example.board_plugin.setup.SampleSource;
+import com.example.board_plugin.setup.SensorProfile;
+import com.example.board_plugin.setup.SensorSetupManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import bolts.Task;
+
+// One BluetoothConnectionManager per board, keyed by MAC address. Each session owns its own
+// setup manager and measurement buffers and connects independently of the others.
+//
+// There is a single registry per process. The plugin and the foreground service both attach to
+// it, so a board is only ever connected once and every reader drains the same buffers. While the
+// foreground service runs it retains the sessions, and the plugin leaves them connected when its
+// engine goes away.
+public class BoardSessionRegistry {
+
+    private static final String TAG = "BoardSessionRegistry";
+
+    private static BoardSessionRegistry shared;
+
+    private final Context context;
+    private final Map<String, BluetoothConnectionManager> sessions = new ConcurrentHashMap<>();
+    private final List<String> sessionOrder = new ArrayList<>();
+    private final Set<String> consumers = ConcurrentHashMap.newKeySet();
+    private final List<BluetoothConnectionManager.ConnectionCallback> connectionCallbacks =
+            new CopyOnWriteArrayList<>();
+    private final BluetoothConnectionManager.ConnectionCallback dispatcher =
+            new BluetoothConnectionManager.ConnectionCallback() {
+                @Override
+                public void onConnectionSuccess(String macAddress, int batteryLevel, List<String> activeSensors) {
+                    connectionCallbacks.forEach(callback ->
+                            callback.onConnectionSuccess(macAddress, batteryLevel, activeSensors));
+                }
+
+                @Override
+                public void onDisconnection(String macAddress, String reason) {
+                    connectionCallbacks.forEach(callback -> callback.onDisconnection(macAddress, reason));
+                }
+            };
+    private PendingThresholdListener pendingThresholdListener;
+    private volatile boolean retainedByService = false;
+
+    private BoardSessionRegistry(Context context) {
+        this.context = context.getApplicationContext();
+        var metrics = PluginMetrics.shared();
+        metrics.gauge("boards.open", sessions::size);
+        metrics.gauge("boards.connected",
+                () -> sessions.values().stream().filter(BluetoothConnectionManager::isConnected).count());
+        metrics.gauge("ingest.queue_depth", () -> sumAcrossSessions(BluetoothConnectionManager::getIngestQueueDepths));
+        metrics.gauge("ingest.dropped", () -> sumAcrossSessions(BluetoothConnectionManager::getIngestDropCounts));
+        metrics.gauge("buffer.overflowed", () -> sumAcrossSessions(BluetoothConnectionManager::getOverflowCounts));
+        metrics.gauges("buffer.lag", this::maxLagAcrossSessions);
+    }
+
+    public static synchronized BoardSessionRegistry shared(Context context) {
+        if (shared == null) {
+            shared = new BoardSessionRegistry(context);
+        }
+        return shared;
+    }
+
+    public void addConnectionCallback(BluetoothConnectionManager.ConnectionCallback callback) {
+        connectionCallbacks.add(callback);
+    }
+
+    public void removeConnectionCallback(BluetoothConnectionManager.ConnectionCallback callback) {
+        connectionCallbacks.remove(callback);
+    }
+
+    public void setRetainedByService(boolean retained) {
+        retainedByService = retained;
+    }
+
+    public boolean isRetainedByService() {
+        return retainedByService;
+    }
+
+    public synchronized BluetoothConnectionManager openSession(String macAddress) {
+        var session = sessions.get(macAddress);
+        if (session != null) {
+            return session;
+        }
+        session = new BluetoothConnectionManager(context, new SensorSetupManager());
+        session.setConnectionCallback(dispatcher);
+        for (String consumer : consumers) {
+            session.registerConsumer(consumer);
+        }
+        var threshold = pendingThresholdListener;
+        if (threshold != null) {
+            session.setPendingThresholdListener(threshold.consumer(), threshold.threshold(), threshold.listener());
+        }
+        sessions.put(macAddress, session);
+        sessionOrder.add(macAddress);
+        Log.i(TAG, "Opened session for " + macAddress + " (" + sessions.size() + " boards)");
+        return session;
+    }
+
+    public BluetoothConnectionManager session(String macAddress) {
+        return macAddress == null ? primarySession() : sessions.get(macAddress);
+    }
+
+    // The board connected first; single-board callers keep talking to it.
+    public synchronized BluetoothConnectionManager primarySession() {
+        return sessionOrder.isEmpty() ? null : sessions.get(sessionOrder.get(0));
+    }
+
+    public synchronized String primaryMacAddress() {
+        return sessionOrder.isEmpty() ? null : sessionOrder.get(0);
+    }
+
+    public synchronized List<String> macAddresses() {
+        return List.copyOf(sessionOrder);
+    }
+
+    public boolean isConnecting(String macAddress) {
+        var session = sessions.get(macAddress);
+        return session != null && session.isConnecting();
+    }
+
+    public boolean isConnected() {
+        return sessions.values().stream().anyMatch(BluetoothConnectionManager::isConnected);
+    }
+
+    // A board stays wanted from the moment its session opens until it is disconnected on
+    // purpose, including while a connection cycle that gave up sits in IDLE waiting to be revived.
+    public boolean hasWantedSession() {
+        return sessions.values().stream()
+                .anyMatch(session -> session.getConnectionState() != ConnectionState.SHUTDOWN);
+    }
+
+    // Joins the session for this board if one is already connected or connecting, and only
+    // starts a connection when there is none.
+    public BluetoothConnectionManager attach(String macAddress) {
+        var session = openSession(macAddress);
+        var state = session.getConnectionState();
+        if (state == ConnectionState.IDLE || state == ConnectionState.SHUTDOWN) {
+            Log.i(TAG, "No live session for " + macAddress + ", connecting");
+            session.connectToDevice(macAddress);
+        }
+        return session;
+    }
+
+    // A sample source stands in for the board; the address then only names the session.
+    public void connect(String macAddress, SensorProfile profile, SampleSource source) {
+        var session = openSession(macAddress);
+        session.setSensorProfile(profile);
+        session.setSampleSource(source);
+        session.connectToDevice(macAddress);
+    }
+
+    public Task<Void> disconnect(String macAddress) {
+        BluetoothConnectionManager session;
+        synchronized (this) {
+            session = sessions.remove(macAddress);
+            sessionOrder.remove(macAddress);
+        }
+        if (session == null) {
+            return Task.forResult(null);
+        }
+        Log.i(TAG, "Closing session for " + macAddress);
+        return session.disconnectFromBoard();
+    }
+
+    public void checkConnections() {
+        sessions.values().forEach(BluetoothConnectionManager::checkConnectionAndReconnect);
+    }
+
+    public Task<Void> disconnectAll() {
+        List<Task<Void>> disconnects = new ArrayList<>();
+        for (String macAddress : macAddresses()) {
+            disconnects.add(disconnect(macAddress));
+        }
+        return Task.whenAll(disconnects);
+    }
+
+    public void registerConsumer(String consumer) {
+        consumers.add(consumer);
+        sessions.values().forEach(session -> session.registerConsumer(consumer));
+    }
+
+    public void unregisterConsumer(String consumer) {
+        consumers.remove(consumer);
+        sessions.values().forEach(session -> session.unregisterConsumer(consumer));
+    }
+
+    public synchronized void setPendingThresholdListener(String consumer, int threshold, Runnable listener) {
+        pendingThresholdListener = listener == null ? null : new PendingThresholdListener(consumer, threshold, listener);
+        sessions.values().forEach(session -> session.setPendingThresholdListener(consumer, threshold, listener));
+    }
+
+    // Every board is stamped against the phone's clock, but their notifications arrive at different
+    // moments. Draining each connected board only up to the point all of them have reached keeps
+    // one drain covering the same time span on every board; later samples wait for the next drain.
+    public Map<String, MeasurementSnapshot> drainAll(String consumer) {
+        List<MeasurementHandler> connected = new ArrayList<>();
+        for (BluetoothConnectionManager session : sessions.values()) {
+            if (session.isConnected()) {
+                connected.add(session.getMeasurementHandler());
+            }
+        }
+        long cutOff = cutOff(connected);
+
+        Map<String, MeasurementSnapshot> snapshots = new LinkedHashMap<>();
+        for (String macAddress : macAddresses()) {
+            var session = sessions.get(macAddress);
+            if (session != null) {
+                snapshots.put(macAddress, session.drain(consumer, cutOff));
+            }
+        }
+        return snapshots;
+    }
+
+    // Boards with no active stream that has recently produced samples are left out; with fewer
+    // than two boards left there is nothing to align and everything is drained.
+    static long cutOff(Collection<MeasurementHandler> connected) {
+        long cutOff = Long.MAX_VALUE;
+        int aligned = 0;
+        for (MeasurementHandler handler : connected) {
+            long complete = handler.completeThrough();
+            if (complete != Long.MIN_VALUE) {
+                cutOff = Math.min(cutOff, complete);
+                aligned++;
+            }
+        }
+        return aligned < 2 ? Long.MAX_VALUE : cutOff;
+    }
+
+    public boolean hasPendingSamples() {
+        return sessions.values().stream().anyMatch(BluetoothConnectionManager::hasPendingSamples);
+    }
+
+    private long sumAcrossSessions(Function<BluetoothConnectionManager, Map<String, Long>> perType) {
+        long total = 0;
+        for (BluetoothConnectionManager session : sessions.values()) {
+            for (long value : perType.apply(session).values()) {
+                total += value;
+            }
+        }
+        return total;
+    }
+
+    // The worst board per consumer, since that is the one about to overflow.
+    private Map<String, Long> maxLagAcrossSessions() {
+        Map<String, Long> lags = new HashMap<>();
+        for (BluetoothConnectionManager session : sessions.values()) {
+            session.getConsumerLags().forEach((consumer, lag) -> lags.merge(consumer, lag, Math::max));
+        }
+        return lags;
+    }
+
+    private record PendingThresholdListener(String consumer, int threshold, Runnable listener) {
+    }
+}
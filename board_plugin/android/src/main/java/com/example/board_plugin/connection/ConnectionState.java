@@ -0,0 +1,11 @@
+package com.example.board_plugin.connection;
+
+public enum ConnectionState {
+    IDLE,
+    BINDING,
+    CONNECTING,
+    CONFIGURING,
+    STREAMING,
+    BACKOFF,
+    SHUTDOWN
+}
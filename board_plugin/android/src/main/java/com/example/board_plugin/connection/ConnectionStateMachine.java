@@ -0,0 +1,258 @@
+package com.example.board_plugin.connection;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Owns every reconnect decision. Callbacks from the service binding, the board and the periodic
+// connection check only report events here; the machine decides whether an attempt is started,
+// and all retries go through the one scheduler so two attempts can never overlap.
+//
+// Every attempt gets an id that connectBoard() and configureBoard() receive. Callbacks report it
+// back, and those from an attempt that has since been abandoned are ignored, so a late
+// connectAsync() or setup completion cannot advance or fail the attempt that replaced it.
+//
+// Actions are never called while the monitor is held: state changes queue them and they run
+// once the lock is released, so an action may call straight back into the machine.
+public class ConnectionStateMachine {
+
+    private static final String TAG = "ConnectionStateMachine";
+
+    private final Actions actions;
+    private final Scheduler scheduler;
+    private final BackoffPolicy backoffPolicy;
+    private final Random random;
+    private final List<Runnable> pendingActions = new ArrayList<>();
+
+    private ConnectionState state = ConnectionState.IDLE;
+    private boolean serviceBound = false;
+    private int attempt = 0;
+    private int attemptId = 0;
+
+    public ConnectionStateMachine(Actions actions, Scheduler scheduler, BackoffPolicy backoffPolicy, Random random) {
+        this.actions = actions;
+        this.scheduler = scheduler;
+        this.backoffPolicy = backoffPolicy;
+        this.random = random;
+    }
+
+    public synchronized ConnectionState state() {
+        return state;
+    }
+
+    public synchronized boolean isActive() {
+        return state == ConnectionState.BINDING
+                || state == ConnectionState.CONNECTING
+                || state == ConnectionState.CONFIGURING;
+    }
+
+    public synchronized int currentAttemptId() {
+        return attemptId;
+    }
+
+    public void start() {
+        synchronized (this) {
+            if (state != ConnectionState.IDLE && state != ConnectionState.SHUTDOWN
+                    && state != ConnectionState.BACKOFF) {
+                Log.w(TAG, "Ignoring start while " + state);
+                return;
+            }
+            scheduler.cancel();
+            attempt = 0;
+            beginAttempt();
+        }
+        runPendingActions();
+    }
+
+    public void onServiceBound() {
+        synchronized (this) {
+            serviceBound = true;
+            if (state == ConnectionState.BINDING) {
+                transition(ConnectionState.CONNECTING, "service bound");
+                int id = attemptId;
+                pendingActions.add(() -> actions.connectBoard(id));
+            }
+        }
+        runPendingActions();
+    }
+
+    public void onServiceLost(String reason) {
+        synchronized (this) {
+            serviceBound = false;
+            fail(reason);
+        }
+        runPendingActions();
+    }
+
+    public void onBoardConnected(int id) {
+        synchronized (this) {
+            if (isStale(id, "board connected")) {
+                return;
+            }
+            if (state == ConnectionState.CONNECTING) {
+                transition(ConnectionState.CONFIGURING, "board connected");
+                pendingActions.add(() -> actions.configureBoard(id));
+            }
+        }
+        runPendingActions();
+    }
+
+    public void onConfigured(int id) {
+        synchronized (this) {
+            if (isStale(id, "configured")) {
+                return;
+            }
+            if (state == ConnectionState.CONFIGURING) {
+                attempt = 0;
+                transition(ConnectionState.STREAMING, "board configured");
+            }
+        }
+        runPendingActions();
+    }
+
+    // A failure of whatever attempt is current, for events that are not tied to one, such as
+    // losing the service binding.
+    public void onFailure(String reason) {
+        synchronized (this) {
+            fail(reason);
+        }
+        runPendingActions();
+    }
+
+    public void onFailure(int id, String reason) {
+        synchronized (this) {
+            if (isStale(id, reason)) {
+                return;
+            }
+            fail(reason);
+        }
+        runPendingActions();
+    }
+
+    // For failures a retry cannot fix, such as an invalid address.
+    public void abort(int id, String reason) {
+        synchronized (this) {
+            if (isStale(id, reason) || state == ConnectionState.SHUTDOWN) {
+                return;
+            }
+            scheduler.cancel();
+            attempt = 0;
+            attemptId++;
+            transition(ConnectionState.IDLE, reason);
+        }
+        runPendingActions();
+    }
+
+    // Restarts a connection cycle that gave up earlier; any other state already has an attempt
+    // running or scheduled.
+    public void checkConnection() {
+        synchronized (this) {
+            if (state != ConnectionState.IDLE) {
+                return;
+            }
+        }
+        start();
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            scheduler.cancel();
+            attempt = 0;
+            attemptId++;
+            transition(ConnectionState.SHUTDOWN, "shutdown requested");
+        }
+        runPendingActions();
+    }
+
+    public synchronized void onServiceUnbound() {
+        serviceBound = false;
+    }
+
+    private void retry() {
+        synchronized (this) {
+            if (state != ConnectionState.BACKOFF) {
+                return;
+            }
+            beginAttempt();
+        }
+        runPendingActions();
+    }
+
+    private boolean isStale(int id, String event) {
+        if (id == attemptId) {
+            return false;
+        }
+        Log.w(TAG, "Ignoring \"" + event + "\" from abandoned attempt " + id + " (current " + attemptId + ")");
+        return true;
+    }
+
+    private void fail(String reason) {
+        if (state == ConnectionState.IDLE || state == ConnectionState.SHUTDOWN || state == ConnectionState.BACKOFF) {
+            return;
+        }
+        attempt++;
+        attemptId++;
+        if (attempt > backoffPolicy.maxAttempts()) {
+            attempt = 0;
+            transition(ConnectionState.IDLE,
+                    reason + " (gave up after " + backoffPolicy.maxAttempts() + " attempts)");
+            return;
+        }
+        long delay = backoffPolicy.delayFor(attempt, random);
+        transition(ConnectionState.BACKOFF, reason);
+        Log.i(TAG, "Retry " + attempt + "/" + backoffPolicy.maxAttempts() + " in " + delay + " ms");
+        scheduler.schedule(this::retry, delay);
+    }
+
+    private void beginAttempt() {
+        attemptId++;
+        int id = attemptId;
+        if (serviceBound) {
+            transition(ConnectionState.CONNECTING, "attempt " + (attempt + 1));
+            pendingActions.add(() -> actions.connectBoard(id));
+        } else {
+            transition(ConnectionState.BINDING, "attempt " + (attempt + 1));
+            pendingActions.add(actions::bindService);
+        }
+    }
+
+    private void transition(ConnectionState next, String reason) {
+        var previous = state;
+        state = next;
+        Log.i(TAG, previous + " -> " + next + " (" + reason + ")");
+        pendingActions.add(() -> actions.onStateChanged(previous, next, reason));
+    }
+
+    // Runs everything queued so far in order. An action that calls back into the machine queues
+    // and runs its own follow-ups before this returns.
+    private void runPendingActions() {
+        while (true) {
+            Runnable next;
+            synchronized (this) {
+                if (pendingActions.isEmpty()) {
+                    return;
+                }
+                next = pendingActions.remove(0);
+            }
+            next.run();
+        }
+    }
+
+    public interface Actions {
+        void bindService();
+
+        void connectBoard(int attemptId);
+
+        void configureBoard(int attemptId);
+
+        void onStateChanged(ConnectionState previous, ConnectionState next, String reason);
+    }
+
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMs);
+
+        void cancel();
+    }
+}
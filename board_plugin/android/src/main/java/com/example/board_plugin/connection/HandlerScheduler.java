@@ -0,0 +1,24 @@
+package com.example.board_plugin.connection;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+final class HandlerScheduler implements ConnectionStateMachine.Scheduler {
+
+    private final Handler handler;
+    private final Object token = new Object();
+
+    HandlerScheduler(Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMs) {
+        handler.postAtTime(task, token, SystemClock.uptimeMillis() + delayMs);
+    }
+
+    @Override
+    public void cancel() {
+        handler.removeCallbacksAndMessages(token);
+    }
+}
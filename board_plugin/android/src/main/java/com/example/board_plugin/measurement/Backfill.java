@@ -0,0 +1,91 @@
+package com.example.board_plugin.measurement;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+// Collects samples downloaded from the board's logger while the live stream is held back, then
+// replays both in timestamp order. Logged entries only fill the gap between the last sample
+// recorded before the link dropped and the first live sample after it came back, which is what
+// keeps samples that were both streamed and logged from being recorded twice.
+//
+// Live samples are staged up to a limit per type. A type that reaches it makes stageLive()
+// refuse, and the handler then cuts the backfill short rather than hold the stream back any longer.
+final class Backfill {
+
+    private final Map<MeasurementType, Long> gapStart;
+    private final int maxStagedLive;
+    private final Map<MeasurementType, List<StagedSample>> logged = new EnumMap<>(MeasurementType.class);
+    private final Map<MeasurementType, List<StagedSample>> live = new EnumMap<>(MeasurementType.class);
+    private boolean closed = false;
+
+    Backfill(Map<MeasurementType, Long> gapStart, int maxStagedLive) {
+        this.gapStart = gapStart;
+        this.maxStagedLive = maxStagedLive;
+        for (MeasurementType type : MeasurementType.values()) {
+            logged.put(type, new ArrayList<>());
+            live.put(type, new ArrayList<>());
+        }
+    }
+
+    synchronized boolean stageLive(MeasurementType type, float x, float y, float z, float w, long timestamp) {
+        var staged = live.get(type);
+        if (closed || staged.size() >= maxStagedLive) {
+            return false;
+        }
+        staged.add(new StagedSample(x, y, z, w, timestamp));
+        return true;
+    }
+
+    synchronized boolean stageLogged(MeasurementType type, float x, float y, float z, float w, long timestamp) {
+        if (closed || timestamp <= gapStart.getOrDefault(type, Long.MIN_VALUE)) {
+            return false;
+        }
+        logged.get(type).add(new StagedSample(x, y, z, w, timestamp));
+        return true;
+    }
+
+    // Runs once; a backfill that was already cut short replays nothing when the download ends.
+    synchronized int replay(SampleSink sink) {
+        if (closed) {
+            return 0;
+        }
+        closed = true;
+        int backfilled = 0;
+        for (MeasurementType type : MeasurementType.values()) {
+            var loggedSamples = logged.get(type);
+            var liveSamples = live.get(type);
+            loggedSamples.sort(Comparator.comparingLong(StagedSample::timestamp));
+            long gapEnd = liveSamples.isEmpty() ? Long.MAX_VALUE : liveSamples.get(0).timestamp();
+            long last = Long.MIN_VALUE;
+            for (StagedSample sample : loggedSamples) {
+                if (sample.timestamp() >= gapEnd) {
+                    break;
+                }
+                if (sample.timestamp() > last) {
+                    sample.replay(type, sink);
+                    last = sample.timestamp();
+                    backfilled++;
+                }
+            }
+            for (StagedSample sample : liveSamples) {
+                sample.replay(type, sink);
+            }
+            loggedSamples.clear();
+            liveSamples.clear();
+        }
+        return backfilled;
+    }
+
+    interface SampleSink {
+        void accept(MeasurementType type, float x, float y, float z, float w, long timestamp);
+    }
+
+    private record StagedSample(float x, float y, float z, float w, long timestamp) {
+        void replay(MeasurementType type, SampleSink sink) {
+            sink.accept(type, x, y, z, w, timestamp);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.board_plugin.measurement;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class ConsumerCursor {
+
+    private final String name;
+    final AtomicLong position;
+    final AtomicLong overflowCount = new AtomicLong();
+
+    ConsumerCursor(String name, long position) {
+        this.name = name;
+        this.position = new AtomicLong(position);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long position() {
+        return position.get();
+    }
+
+    public long overflowCount() {
+        return overflowCount.get();
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.board_plugin.measurement;
+
+import java.util.Map;
+
+public record DecimationConfig(DecimationMode mode, int factor) {
+
+    public static final DecimationConfig DEFAULT = new DecimationConfig(DecimationMode.NONE, 1);
+
+    public DecimationConfig {
+        if (factor < 1) {
+            throw new IllegalArgumentException("Decimation factor must be at least 1: " + factor);
+        }
+        if (mode == DecimationMode.NONE) {
+            factor = 1;
+        }
+    }
+
+    public static DecimationConfig fromMap(Map<?, ?> arguments) {
+        var mode = arguments.get("mode") instanceof String name ? DecimationMode.fromString(name) : DEFAULT.mode();
+        var factor = arguments.get("factor") instanceof Number number ? number.intValue() : DEFAULT.factor();
+        return new DecimationConfig(mode, factor);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.board_plugin.measurement;
+
+import androidx.annotation.NonNull;
+
+public enum DecimationMode {
+    NONE("none"),
+    KEEP_EVERY_NTH("keepEveryNth"),
+    BLOCK_AVERAGE("blockAverage"),
+    LOW_PASS("lowPass");
+
+    private final String name;
+
+    DecimationMode(final String name) {
+        this.name = name;
+    }
+
+    public static DecimationMode fromString(String name) {
+        for (DecimationMode mode : values()) {
+            if (mode.name.equals(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown decimation mode: " + name);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return name;
+    }
+}
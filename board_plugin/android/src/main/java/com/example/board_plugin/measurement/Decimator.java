@@ -0,0 +1,136 @@
+package com.example.board_plugin.measurement;
+
+// Runs on the producer thread only; keeps no per-sample allocations so it can sit in front of
+// the ring buffer at 100-800 Hz.
+public class Decimator {
+
+    private final DecimationMode mode;
+    private final int factor;
+    private final float alpha;
+    private final double windowMillis;
+
+    // Output windows are 1 / (input rate / factor) long and counted from the first sample, so
+    // they stay evenly spaced however the samples are bunched up on the way in.
+    private boolean started = false;
+    private long origin;
+    private long window;
+    private int count = 0;
+
+    private int blockSize = 0;
+    private long blockFirst;
+    private long blockLast;
+    private long blockCentre;
+    private float sumX;
+    private float sumY;
+    private float sumZ;
+    private float sumW;
+    private boolean filterPrimed = false;
+    private float filteredX;
+    private float filteredY;
+    private float filteredZ;
+    private float filteredW;
+
+    // Without a known input rate (replayed data) the windows fall back to every factor samples.
+    public Decimator(DecimationConfig config, float inputRateHz) {
+        this.mode = config.mode();
+        this.factor = config.factor();
+        this.windowMillis = inputRateHz > 0 ? factor * 1000.0 / inputRateHz : 0;
+        // One-pole low-pass with its cutoff at the output Nyquist frequency (fs / 2N).
+        this.alpha = (float) (1.0 - Math.exp(-Math.PI / factor));
+    }
+
+    public boolean process(float x, float y, float z, long timestamp, SampleRingBuffer output) {
+        return process(x, y, z, 0f, timestamp, output);
+    }
+
+    public boolean process(float x, float y, float z, float w, long timestamp, SampleRingBuffer output) {
+        return switch (mode) {
+            case NONE -> output.add(x, y, z, w, timestamp);
+            case KEEP_EVERY_NTH -> keepEveryNth(x, y, z, w, timestamp, output);
+            case BLOCK_AVERAGE -> blockAverage(x, y, z, w, timestamp, output);
+            case LOW_PASS -> lowPass(x, y, z, w, timestamp, output);
+        };
+    }
+
+    // True when the sample is the first one in its window. A timestamp before the current window,
+    // as after a reconnect, starts the windows over from that sample.
+    private boolean startsWindow(long timestamp) {
+        if (windowMillis == 0) {
+            boolean first = count == 0;
+            count = (count + 1) % factor;
+            return first;
+        }
+        if (!started || timestamp < origin + window * windowMillis) {
+            started = true;
+            origin = timestamp;
+            window = 0;
+            return true;
+        }
+        long index = (long) ((timestamp - origin) / windowMillis);
+        if (index == window) {
+            return false;
+        }
+        window = index;
+        return true;
+    }
+
+    private boolean keepEveryNth(float x, float y, float z, float w, long timestamp, SampleRingBuffer output) {
+        return startsWindow(timestamp) && output.add(x, y, z, w, timestamp);
+    }
+
+    // A window's average goes out when the first sample of a later window arrives, stamped with
+    // the centre of the window it covers.
+    private boolean blockAverage(float x, float y, float z, float w, long timestamp, SampleRingBuffer output) {
+        boolean added = false;
+        if (startsWindow(timestamp)) {
+            if (blockSize > 0) {
+                long centre = windowMillis > 0 ? blockCentre : blockFirst + (blockLast - blockFirst) / 2;
+                added = addNormalized(sumX / blockSize, sumY / blockSize, sumZ / blockSize, sumW / blockSize,
+                        centre, output);
+            }
+            blockSize = 0;
+            blockFirst = timestamp;
+            blockCentre = Math.round(origin + (window + 0.5) * windowMillis);
+            sumX = 0;
+            sumY = 0;
+            sumZ = 0;
+            sumW = 0;
+        }
+        sumX += x;
+        sumY += y;
+        sumZ += z;
+        sumW += w;
+        blockLast = timestamp;
+        blockSize++;
+        return added;
+    }
+
+    private boolean lowPass(float x, float y, float z, float w, long timestamp, SampleRingBuffer output) {
+        if (!filterPrimed) {
+            filteredX = x;
+            filteredY = y;
+            filteredZ = z;
+            filteredW = w;
+            filterPrimed = true;
+        } else {
+            filteredX += alpha * (x - filteredX);
+            filteredY += alpha * (y - filteredY);
+            filteredZ += alpha * (z - filteredZ);
+            filteredW += alpha * (w - filteredW);
+        }
+        return startsWindow(timestamp) && addNormalized(filteredX, filteredY, filteredZ, filteredW, timestamp, output);
+    }
+
+    // Averaged quaternions are no longer unit length, so rescale them before they leave the
+    // decimator. Neighbouring samples are close together, which keeps the linear average usable.
+    private static boolean addNormalized(float x, float y, float z, float w, long timestamp,
+                                         SampleRingBuffer output) {
+        if (output.components() > 3) {
+            float norm = (float) Math.sqrt(w * w + x * x + y * y + z * z);
+            if (norm > 0f) {
+                return output.add(x / norm, y / norm, z / norm, w / norm, timestamp);
+            }
+        }
+        return output.add(x, y, z, w, timestamp);
+    }
+}
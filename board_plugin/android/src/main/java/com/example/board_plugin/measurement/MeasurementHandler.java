@@ -2,58 +2,425 @@ package com.example.board_plugin.measurement;
 
 import android.util.Log;
 
+import com.example.board_plugin.metrics.Counter;
+import com.example.board_plugin.metrics.LatencyHistogram;
+import com.example.board_plugin.metrics.PluginMetrics;
 import com.mbientlab.metawear.Data;
+import com.mbientlab.metawear.data.Acceleration;
+import com.mbientlab.metawear.data.AngularVelocity;
+import com.mbientlab.metawear.data.Quaternion;
 
-import java.util.Date;
-import java.util.List;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
 
 public class MeasurementHandler {
 
+    public static final String DEFAULT_CONSUMER = "default";
     private static final String TAG = "MeasurementHandler";
-    private static final long dataFetchingPeriodInMillis = 20;
-    private final Map<String, List<List<Object>>> sensorDataBuffer = new ConcurrentHashMap<>();
+    private static final int DEFAULT_BUFFER_CAPACITY = 16384;
+    private static final int INGEST_QUEUE_CAPACITY = 1024;
+    // Live samples held back per type while a backfill runs, as many as a default buffer holds.
+    static final int MAX_STAGED_LIVE_SAMPLES = DEFAULT_BUFFER_CAPACITY;
+    // A stream that has delivered nothing for this long no longer holds back completeThrough().
+    public static final long QUIET_STREAM_TIMEOUT_NANOS = 5_000_000_000L;
+    // A consumer that only ever drained, and has not for this long, is dropped.
+    public static final long IDLE_CONSUMER_TIMEOUT_NANOS = 60_000_000_000L;
+    private static final Counter[] RECEIVED = perTypeCounters("samples.received.");
+    private static final Counter[] DECIMATED = perTypeCounters("samples.decimated.");
+    private static final LatencyHistogram DRAIN_LATENCY_US = PluginMetrics.shared().histogram("drain.latency_us");
+    private static final LatencyHistogram TIME_TO_FIRST_SAMPLE_MS =
+            PluginMetrics.shared().histogram("connection.time_to_first_sample_ms");
+    private final Map<MeasurementType, SampleRingBuffer> sensorDataBuffer = new EnumMap<>(MeasurementType.class);
+    private final Map<String, Map<MeasurementType, ConsumerCursor>> consumers = new ConcurrentHashMap<>();
+    // Consumers that drain() registered on first use, with when they last drained. Ones that
+    // registered explicitly are not here and stay until they unregister.
+    private final Map<String, Long> polledConsumers = new ConcurrentHashMap<>();
 
-    private static String cleanedUpString(String rawData) {
-        final String removeUnitsRegex = "([-+]?[0-9]*\\.?[0-9]+)\\S*(?=[,}])";
-        return rawData.replaceAll(removeUnitsRegex, "$1").replaceAll("(\\w+):", "\"$1\":").trim();
+    private volatile Decimator[] decimators = new Decimator[MeasurementType.values().length];
+    private volatile SampleClock[] sampleClocks = new SampleClock[MeasurementType.values().length];
+    private final float[] outputDataRates = new float[MeasurementType.values().length];
+    private Map<MeasurementType, DecimationConfig> decimationConfigs = Map.of();
+    private volatile PendingThresholdListener pendingThresholdListener;
+    private volatile boolean pendingThresholdSignalled = false;
+    private final AtomicLongArray lastRecordedTimestamps = new AtomicLongArray(MeasurementType.values().length);
+    private final AtomicLongArray lastRecordedAt = new AtomicLongArray(MeasurementType.values().length);
+    private final LongSupplier nanoClock;
+    private volatile boolean[] activeTypes = new boolean[MeasurementType.values().length];
+    private final Backfill.SampleSink writer = this::write;
+    private volatile Backfill backfill;
+    private final SampleIngest ingest = new SampleIngest(INGEST_QUEUE_CAPACITY, this::ingestSample);
+    private final Backfill.SampleSink ingestQueue = ingest::offer;
+    private volatile long firstSampleArmedAt = 0;
+
+    public MeasurementHandler() {
+        this(DEFAULT_BUFFER_CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    public MeasurementHandler(int bufferCapacity, OverflowPolicy overflowPolicy) {
+        this(bufferCapacity, overflowPolicy, System::nanoTime);
+    }
+
+    public MeasurementHandler(int bufferCapacity, OverflowPolicy overflowPolicy, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        for (MeasurementType type : MeasurementType.values()) {
+            sensorDataBuffer.put(type, new SampleRingBuffer(bufferCapacity, type.components(), overflowPolicy));
+        }
+        configureDecimation(Map.of());
+        for (MeasurementType type : MeasurementType.values()) {
+            sampleClocks[type.ordinal()] = new SampleClock(0);
+            lastRecordedTimestamps.set(type.ordinal(), Long.MIN_VALUE);
+            activeTypes[type.ordinal()] = true;
+        }
     }
 
-    private boolean shouldFetchMeasurement(MeasurementType type) {
-        var measurements = sensorDataBuffer.get(type.toString());
-        if (measurements != null && !measurements.isEmpty()) {
-            List<Object> lastMeasurement = measurements.get(measurements.size() - 1);
-            Long lastTimestamp = (Long) lastMeasurement.get(1);
+    private static Counter[] perTypeCounters(String prefix) {
+        var counters = new Counter[MeasurementType.values().length];
+        for (MeasurementType type : MeasurementType.values()) {
+            counters[type.ordinal()] = PluginMetrics.shared().counter(prefix + type);
+        }
+        return counters;
+    }
+
+    // The decimator windows are sized from the rate, so the type's decimator starts over too.
+    public synchronized void setOutputDataRate(MeasurementType type, float outputDataRateHz) {
+        var clocks = sampleClocks.clone();
+        clocks[type.ordinal()] = new SampleClock(outputDataRateHz);
+        sampleClocks = clocks;
+        outputDataRates[type.ordinal()] = outputDataRateHz;
+        var configured = decimators.clone();
+        configured[type.ordinal()] = new Decimator(
+                decimationConfigs.getOrDefault(type, DecimationConfig.DEFAULT), outputDataRateHz);
+        decimators = configured;
+    }
+
+    // Called whenever the board is configured. Only the given streams count towards
+    // completeThrough() from now on, and they start over, so a timestamp left behind by an
+    // earlier profile or connection cannot hold the cut-off back.
+    public void resetStreams(Set<MeasurementType> types) {
+        var active = new boolean[MeasurementType.values().length];
+        for (MeasurementType type : MeasurementType.values()) {
+            active[type.ordinal()] = types.contains(type);
+            lastRecordedTimestamps.set(type.ordinal(), Long.MIN_VALUE);
+        }
+        activeTypes = active;
+    }
 
-            return (new Date().getTime() - lastTimestamp) > dataFetchingPeriodInMillis;
+    public synchronized void configureDecimation(Map<MeasurementType, DecimationConfig> configs) {
+        decimationConfigs = Map.copyOf(configs);
+        var configured = new Decimator[MeasurementType.values().length];
+        for (MeasurementType type : MeasurementType.values()) {
+            var config = configs.getOrDefault(type, DecimationConfig.DEFAULT);
+            configured[type.ordinal()] = new Decimator(config, outputDataRates[type.ordinal()]);
+            Log.i(TAG, "Decimation for " + type + ": " + config.mode() + " x" + config.factor());
         }
-        return true;
+        decimators = configured;
     }
 
-    public <T> void performMeasurement(MeasurementType type, Class<T> sensor, Data data) {
+    // Runs on the MetaWear callback thread, so it only copies the values out and queues them;
+    // timestamp correction, decimation and buffering happen on the ingest thread.
+    public void performMeasurement(MeasurementType type, Data data) {
+        RECEIVED[type.ordinal()].increment();
         try {
-            if (shouldFetchMeasurement(type)) {
-                var measurement = data.value(sensor).toString();
-                var timestamp = new Date().getTime();
-
-                sensorDataBuffer.computeIfAbsent(
-                        type.toString(),
-                        key -> new CopyOnWriteArrayList<>()
-                ).add(List.of(cleanedUpString(measurement), timestamp));
-            }
+            dispatch(type, data, data.timestamp().getTimeInMillis(), ingestQueue);
         } catch (Exception e) {
             Log.e(TAG, "Error performing measurement for " + type, e);
         }
     }
 
-    public Map<String, List<List<Object>>> getMeasurementsBuffer() {
-        return sensorDataBuffer;
+    // The same hand-off for sources that are not a MetaWear board and already have the values
+    // unpacked. One thread per type, like the board's routes.
+    public void performMeasurement(MeasurementType type, float x, float y, float z, float w, long timestamp) {
+        RECEIVED[type.ordinal()].increment();
+        ingestQueue.accept(type, x, y, z, w, timestamp);
+    }
+
+    // Starts the clock for the connection.time_to_first_sample_ms histogram; the next live sample
+    // to reach the ingest thread stops it.
+    public void armFirstSampleTimer() {
+        firstSampleArmedAt = System.nanoTime();
+    }
+
+    private void ingestSample(MeasurementType type, float x, float y, float z, float w, long rawTimestamp) {
+        long armedAt = firstSampleArmedAt;
+        if (armedAt != 0) {
+            firstSampleArmedAt = 0;
+            TIME_TO_FIRST_SAMPLE_MS.record((System.nanoTime() - armedAt) / 1_000_000);
+        }
+        record(type, x, y, z, w, sampleClocks[type.ordinal()].timestamp(rawTimestamp));
+    }
+
+    // Logged entries carry their own board timestamps, so they skip the sample clock.
+    public void performLoggedMeasurement(MeasurementType type, Data data) {
+        var current = backfill;
+        if (current == null) {
+            return;
+        }
+        try {
+            dispatch(type, data, data.timestamp().getTimeInMillis(), current::stageLogged);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading logged measurement for " + type, e);
+        }
+    }
+
+    private static void dispatch(MeasurementType type, Data data, long timestamp, Backfill.SampleSink sink) {
+        switch (type) {
+            case ACCELERATION, LINEAR_ACCELERATION -> {
+                var acceleration = data.value(Acceleration.class);
+                sink.accept(type, acceleration.x(), acceleration.y(), acceleration.z(), 0f, timestamp);
+            }
+            case ANGULAR_VELOCITY -> {
+                var angularVelocity = data.value(AngularVelocity.class);
+                sink.accept(type, angularVelocity.x(), angularVelocity.y(), angularVelocity.z(), 0f, timestamp);
+            }
+            case QUATERNION -> {
+                var quaternion = data.value(Quaternion.class);
+                sink.accept(type, quaternion.x(), quaternion.y(), quaternion.z(), quaternion.w(), timestamp);
+            }
+        }
+    }
+
+    public void record(MeasurementType type, float x, float y, float z, long timestamp) {
+        record(type, x, y, z, 0f, timestamp);
+    }
+
+    public void record(MeasurementType type, float x, float y, float z, float w, long timestamp) {
+        var current = backfill;
+        if (current != null) {
+            if (current.stageLive(type, x, y, z, w, timestamp)) {
+                return;
+            }
+            abandonBackfill(current, type + " staging full");
+        }
+        write(type, x, y, z, w, timestamp);
+    }
+
+    private void write(MeasurementType type, float x, float y, float z, float w, long timestamp) {
+        var buffer = sensorDataBuffer.get(type);
+        lastRecordedTimestamps.lazySet(type.ordinal(), timestamp);
+        lastRecordedAt.lazySet(type.ordinal(), nanoClock.getAsLong());
+        if (decimators[type.ordinal()].process(x, y, z, w, timestamp, buffer)) {
+            signalIfPendingThresholdReached(type, buffer);
+        } else {
+            DECIMATED[type.ordinal()].increment();
+        }
+    }
+
+    // Holds live samples back until the board's log has been downloaded, so the gap can be
+    // filled in before anything newer reaches the buffers.
+    public void beginBackfill() {
+        Map<MeasurementType, Long> gapStart = new EnumMap<>(MeasurementType.class);
+        for (MeasurementType type : MeasurementType.values()) {
+            gapStart.put(type, lastRecordedTimestamps.get(type.ordinal()));
+        }
+        backfill = new Backfill(gapStart, MAX_STAGED_LIVE_SAMPLES);
+        Log.i(TAG, "Backfill started");
+    }
+
+    // The replay runs on the ingest thread: live samples keep being staged until it has written
+    // everything, and only then go straight to the buffers, so there is a single writer and
+    // timestamps stay in order.
+    public void endBackfill() {
+        var current = backfill;
+        if (current == null) {
+            return;
+        }
+        ingest.execute(() -> {
+            int backfilled = current.replay(writer);
+            backfill = null;
+            Log.i(TAG, "Backfill finished with " + backfilled + " logged samples");
+        });
+    }
+
+    // For a download that never finishes. The part of the log that did arrive is still filled in.
+    public void abandonBackfill(String reason) {
+        var current = backfill;
+        if (current == null) {
+            return;
+        }
+        ingest.execute(() -> abandonBackfill(current, reason));
+    }
+
+    // Runs on the writing thread. Staged live samples go to the buffers, and anything the
+    // download delivers from now on is ignored.
+    private void abandonBackfill(Backfill current, String reason) {
+        int backfilled = current.replay(writer);
+        if (backfill == current) {
+            backfill = null;
+        }
+        Log.w(TAG, "Backfill abandoned (" + reason + ") after " + backfilled + " logged samples");
+    }
+
+    private void signalIfPendingThresholdReached(MeasurementType type, SampleRingBuffer buffer) {
+        var threshold = pendingThresholdListener;
+        if (threshold != null && !pendingThresholdSignalled
+                && buffer.pending(threshold.cursors().get(type)) >= threshold.threshold()) {
+            pendingThresholdSignalled = true;
+            threshold.listener().run();
+        }
+    }
+
+    public void setPendingThresholdListener(String consumer, int threshold, Runnable listener) {
+        pendingThresholdSignalled = false;
+        pendingThresholdListener = listener == null
+                ? null
+                : new PendingThresholdListener(consumer, registerConsumer(consumer), threshold, listener);
+    }
+
+    public Map<MeasurementType, ConsumerCursor> registerConsumer(String consumer) {
+        polledConsumers.remove(consumer);
+        return registerCursors(consumer);
+    }
+
+    private Map<MeasurementType, ConsumerCursor> registerCursors(String consumer) {
+        return consumers.computeIfAbsent(consumer, name -> {
+            Map<MeasurementType, ConsumerCursor> cursors = new EnumMap<>(MeasurementType.class);
+            sensorDataBuffer.forEach((type, buffer) -> cursors.put(type, buffer.register(name)));
+            Log.i(TAG, "Registered consumer " + name);
+            return cursors;
+        });
+    }
+
+    public void unregisterConsumer(String consumer) {
+        polledConsumers.remove(consumer);
+        var cursors = consumers.remove(consumer);
+        if (cursors != null) {
+            cursors.forEach((type, cursor) -> sensorDataBuffer.get(type).unregister(cursor));
+            Log.i(TAG, "Unregistered consumer " + consumer);
+        }
+    }
+
+    public MeasurementSnapshot drain() {
+        return drain(DEFAULT_CONSUMER);
+    }
+
+    public MeasurementSnapshot drain(String consumer) {
+        return drain(consumer, Long.MAX_VALUE);
+    }
+
+    public MeasurementSnapshot drain(String consumer, long maxTimestamp) {
+        long startedAt = System.nanoTime();
+        var threshold = pendingThresholdListener;
+        if (threshold != null && threshold.consumer().equals(consumer)) {
+            pendingThresholdSignalled = false;
+        }
+        var cursors = polledCursors(consumer);
+        EnumMap<MeasurementType, SampleBatch> batches = new EnumMap<>(MeasurementType.class);
+        sensorDataBuffer.forEach((type, buffer) -> batches.put(type, buffer.drain(cursors.get(type), maxTimestamp)));
+        DRAIN_LATENCY_US.record((System.nanoTime() - startedAt) / 1000);
+        expireIdleConsumers();
+        return new MeasurementSnapshot(batches);
+    }
+
+    private Map<MeasurementType, ConsumerCursor> polledCursors(String consumer) {
+        long now = nanoClock.getAsLong();
+        var cursors = consumers.get(consumer);
+        if (cursors != null) {
+            polledConsumers.replace(consumer, now);
+            return cursors;
+        }
+        polledConsumers.put(consumer, now);
+        return registerCursors(consumer);
+    }
+
+    // A poller that went away would otherwise keep hasPendingSamples() true for good and, under
+    // DROP_NEWEST, make the producers drop once its cursor fills up. Runs on every drain and on
+    // the service's pending check, so it also happens when nobody else is draining.
+    private void expireIdleConsumers() {
+        long now = nanoClock.getAsLong();
+        polledConsumers.forEach((consumer, lastDrainedAt) -> {
+            if (now - lastDrainedAt > IDLE_CONSUMER_TIMEOUT_NANOS
+                    && polledConsumers.remove(consumer, lastDrainedAt)) {
+                Log.i(TAG, "Consumer " + consumer + " stopped draining");
+                unregisterConsumer(consumer);
+            }
+        });
+    }
+
+    // The point up to which every active stream is complete, or Long.MIN_VALUE while none has
+    // produced samples. Streams that have gone quiet are left out, so one stalled stream cannot
+    // hold the others back.
+    public long completeThrough() {
+        long now = nanoClock.getAsLong();
+        var active = activeTypes;
+        long complete = Long.MAX_VALUE;
+        for (MeasurementType type : MeasurementType.values()) {
+            long last = lastRecordedTimestamps.get(type.ordinal());
+            if (!active[type.ordinal()] || last == Long.MIN_VALUE
+                    || now - lastRecordedAt.get(type.ordinal()) > QUIET_STREAM_TIMEOUT_NANOS) {
+                continue;
+            }
+            complete = Math.min(complete, last);
+        }
+        return complete == Long.MAX_VALUE ? Long.MIN_VALUE : complete;
+    }
+
+    public boolean hasPendingSamples() {
+        expireIdleConsumers();
+        return sensorDataBuffer.values().stream().anyMatch(SampleRingBuffer::hasPending);
+    }
+
+    public Map<String, Long> getOverflowCounts() {
+        Map<String, Long> overflowCounts = new HashMap<>();
+        sensorDataBuffer.forEach((type, buffer) -> overflowCounts.put(type.toString(), buffer.overflowCount()));
+        return overflowCounts;
+    }
+
+    public Map<String, Long> getConsumerOverflowCounts(String consumer) {
+        Map<String, Long> overflowCounts = new HashMap<>();
+        var cursors = consumers.get(consumer);
+        if (cursors != null) {
+            cursors.forEach((type, cursor) -> overflowCounts.put(type.toString(), cursor.overflowCount()));
+        }
+        return overflowCounts;
+    }
+
+    // Samples each consumer has yet to drain, taken from its furthest-behind stream.
+    public Map<String, Long> getConsumerLags() {
+        Map<String, Long> lags = new HashMap<>();
+        consumers.forEach((consumer, cursors) -> {
+            long lag = 0;
+            for (var entry : cursors.entrySet()) {
+                lag = Math.max(lag, sensorDataBuffer.get(entry.getKey()).pending(entry.getValue()));
+            }
+            lags.put(consumer, lag);
+        });
+        return lags;
+    }
+
+    public Map<String, Long> getIngestQueueDepths() {
+        Map<String, Long> depths = new HashMap<>();
+        for (MeasurementType type : MeasurementType.values()) {
+            depths.put(type.toString(), ingest.depth(type));
+        }
+        return depths;
+    }
+
+    public Map<String, Long> getIngestQueueMaxDepths() {
+        Map<String, Long> depths = new HashMap<>();
+        for (MeasurementType type : MeasurementType.values()) {
+            depths.put(type.toString(), ingest.maxDepth(type));
+        }
+        return depths;
+    }
+
+    public Map<String, Long> getIngestDropCounts() {
+        Map<String, Long> drops = new HashMap<>();
+        for (MeasurementType type : MeasurementType.values()) {
+            drops.put(type.toString(), ingest.dropCount(type));
+        }
+        return drops;
     }
 
     public void clearMeasurements() {
-        sensorDataBuffer.clear();
+        sensorDataBuffer.values().forEach(SampleRingBuffer::clear);
     }
 
+    private record PendingThresholdListener(String consumer, Map<MeasurementType, ConsumerCursor> cursors,
+                                            int threshold, Runnable listener) {
+    }
 }
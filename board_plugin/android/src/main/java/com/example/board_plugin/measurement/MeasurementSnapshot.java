@@ -0,0 +1,52 @@
+package com.example.board_plugin.measurement;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class MeasurementSnapshot {
+
+    private final Map<MeasurementType, SampleBatch> batches;
+
+    MeasurementSnapshot(EnumMap<MeasurementType, SampleBatch> batches) {
+        this.batches = Collections.unmodifiableMap(batches);
+    }
+
+    public Map<MeasurementType, SampleBatch> batches() {
+        return batches;
+    }
+
+    public SampleBatch batch(MeasurementType type) {
+        return batches.get(type);
+    }
+
+    public boolean isEmpty() {
+        return batches.values().stream().allMatch(SampleBatch::isEmpty);
+    }
+
+    public int sampleCount() {
+        return batches.values().stream().mapToInt(SampleBatch::size).sum();
+    }
+
+    public Map<String, List<List<Object>>> toMeasurementMap() {
+        Map<String, List<List<Object>>> measurements = new HashMap<>();
+        batches.forEach((type, batch) -> {
+            if (!batch.isEmpty()) {
+                measurements.put(type.toString(), batch.toMeasurementList());
+            }
+        });
+        return measurements;
+    }
+
+    public Map<String, byte[]> toPackedMap() {
+        Map<String, byte[]> packed = new HashMap<>();
+        batches.forEach((type, batch) -> {
+            if (!batch.isEmpty()) {
+                packed.put(type.toString(), SampleBatchEncoder.encode(batch));
+            }
+        });
+        return packed;
+    }
+}
@@ -3,13 +3,30 @@ package com.example.board_plugin.measurement;
 import androidx.annotation.NonNull;
 
 public enum MeasurementType {
-    ACCELERATION("acceleration"),
-    ANGULAR_VELOCITY("angularVelocity");
+    ACCELERATION("acceleration", 3),
+    ANGULAR_VELOCITY("angularVelocity", 3),
+    QUATERNION("quaternion", 4),
+    LINEAR_ACCELERATION("linearAcceleration", 3);
 
     private final String name;
+    private final int components;
 
-    MeasurementType(final String name) {
+    MeasurementType(final String name, final int components) {
         this.name = name;
+        this.components = components;
+    }
+
+    public static MeasurementType fromString(String name) {
+        for (MeasurementType type : values()) {
+            if (type.name.equals(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown measurement type: " + name);
+    }
+
+    public int components() {
+        return components;
     }
 
     @NonNull
@@ -17,4 +34,4 @@ public enum MeasurementType {
     public String toString() {
         return name;
     }
-}
\ No newline at end of file
+}
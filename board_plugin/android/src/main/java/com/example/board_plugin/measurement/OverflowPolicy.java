@@ -0,0 +1,6 @@
+package com.example.board_plugin.measurement;
+
+public enum OverflowPolicy {
+    DROP_OLDEST,
+    DROP_NEWEST
+}
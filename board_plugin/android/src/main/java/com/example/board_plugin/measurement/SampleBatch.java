@@ -0,0 +1,91 @@
+package com.example.board_plugin.measurement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public final class SampleBatch {
+
+    private final long firstSequence;
+    private final int count;
+    private final int components;
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private final float[] w;
+    private final long[] timestamps;
+
+    SampleBatch(long firstSequence, int count, int components,
+                float[] x, float[] y, float[] z, float[] w, long[] timestamps) {
+        this.firstSequence = firstSequence;
+        this.count = count;
+        this.components = components;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        this.timestamps = timestamps;
+    }
+
+    static SampleBatch empty(long sequence, int components) {
+        return new SampleBatch(sequence, 0, components, new float[0], new float[0], new float[0],
+                components > 3 ? new float[0] : null, new long[0]);
+    }
+
+    private String formatSample(int index) {
+        if (w == null) {
+            return String.format(Locale.US, "{\"x\": %.3f, \"y\": %.3f, \"z\": %.3f}",
+                    x[index], y[index], z[index]);
+        }
+        return String.format(Locale.US, "{\"w\": %.3f, \"x\": %.3f, \"y\": %.3f, \"z\": %.3f}",
+                w[index], x[index], y[index], z[index]);
+    }
+
+    public long firstSequence() {
+        return firstSequence;
+    }
+
+    public long nextSequence() {
+        return firstSequence + count;
+    }
+
+    public int components() {
+        return components;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public float x(int index) {
+        return x[index];
+    }
+
+    public float y(int index) {
+        return y[index];
+    }
+
+    public float z(int index) {
+        return z[index];
+    }
+
+    public float w(int index) {
+        return w == null ? 0f : w[index];
+    }
+
+    public long timestamp(int index) {
+        return timestamps[index];
+    }
+
+    public List<List<Object>> toMeasurementList() {
+        List<List<Object>> measurements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            measurements.add(List.of(formatSample(i), timestamps[i]));
+        }
+        return measurements;
+    }
+}
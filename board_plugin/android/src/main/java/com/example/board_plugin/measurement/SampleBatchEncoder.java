@@ -0,0 +1,41 @@
+package com.example.board_plugin.measurement;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Layout (little-endian): u8 version, u8 components, u16 reserved, u32 count, i64 first sequence,
+// then per sample `components` float32 values (x, y, z and w for quaternions) followed by an int64
+// timestamp in epoch millis.
+public final class SampleBatchEncoder {
+
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+
+    private SampleBatchEncoder() {
+    }
+
+    public static byte[] encode(SampleBatch batch) {
+        int count = batch.size();
+        int components = batch.components();
+        int sampleSize = components * Float.BYTES + Long.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * sampleSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.put((byte) FORMAT_VERSION);
+        buffer.put((byte) components);
+        buffer.putShort((short) 0);
+        buffer.putInt(count);
+        buffer.putLong(batch.firstSequence());
+
+        for (int i = 0; i < count; i++) {
+            buffer.putFloat(batch.x(i));
+            buffer.putFloat(batch.y(i));
+            buffer.putFloat(batch.z(i));
+            if (components > 3) {
+                buffer.putFloat(batch.w(i));
+            }
+            buffer.putLong(batch.timestamp(i));
+        }
+        return buffer.array();
+    }
+}
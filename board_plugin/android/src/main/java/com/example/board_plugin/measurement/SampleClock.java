@@ -0,0 +1,25 @@
+package com.example.board_plugin.measurement;
+
+// Packed notifications carry several samples that the SDK hands out with the packet's timestamp.
+// Consecutive samples with the same raw timestamp are spread forward by the output data rate period.
+public class SampleClock {
+
+    private final double periodMillis;
+
+    private long lastRawTimestamp = Long.MIN_VALUE;
+    private int indexInPacket = 0;
+
+    public SampleClock(float outputDataRateHz) {
+        this.periodMillis = outputDataRateHz > 0 ? 1000.0 / outputDataRateHz : 0;
+    }
+
+    public long timestamp(long rawTimestamp) {
+        if (rawTimestamp == lastRawTimestamp) {
+            indexInPacket++;
+        } else {
+            lastRawTimestamp = rawTimestamp;
+            indexInPacket = 0;
+        }
+        return rawTimestamp + Math.round(indexInPacket * periodMillis);
+    }
+}
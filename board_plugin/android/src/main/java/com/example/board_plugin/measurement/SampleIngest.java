@@ -0,0 +1,153 @@
+package com.example.board_plugin.measurement;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Moves the per-sample work (timestamp correction, decimation, buffering) off the MetaWear
+// callback thread. Each measurement type gets its own SPSC queue, fed by the one route that
+// streams that type; a single ingest thread drains them all into the sink.
+//
+// The thread is started by the first sample and exits after a quiet period, so a handler whose
+// board has gone away does not keep a thread alive.
+final class SampleIngest {
+
+    private static final String TAG = "SampleIngest";
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final SpscSampleQueue[] queues = new SpscSampleQueue[MeasurementType.values().length];
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Backfill.SampleSink sink;
+    private final long idleTimeoutNanos;
+    private final List<Runnable> claimedTasks = new ArrayList<>();
+
+    private volatile Thread thread;
+    private volatile boolean parked = false;
+
+    SampleIngest(int queueCapacity, Backfill.SampleSink sink) {
+        this(queueCapacity, sink, IDLE_TIMEOUT_NANOS);
+    }
+
+    SampleIngest(int queueCapacity, Backfill.SampleSink sink, long idleTimeoutNanos) {
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        for (MeasurementType type : MeasurementType.values()) {
+            queues[type.ordinal()] = new SpscSampleQueue(queueCapacity);
+        }
+        this.sink = sink;
+    }
+
+    // Called on the BLE callback thread.
+    void offer(MeasurementType type, float x, float y, float z, float w, long timestamp) {
+        queues[type.ordinal()].offer(x, y, z, w, timestamp);
+        wake();
+    }
+
+    private void wake() {
+        var current = thread;
+        if (current == null) {
+            start();
+        } else if (parked) {
+            LockSupport.unpark(current);
+        }
+    }
+
+    // Runs the task on the ingest thread, so work that writes to the buffers never overlaps with
+    // ingestion. It runs after every sample offered before the call has been ingested.
+    void execute(Runnable task) {
+        tasks.add(task);
+        wake();
+    }
+
+    long depth(MeasurementType type) {
+        return queues[type.ordinal()].depth();
+    }
+
+    long maxDepth(MeasurementType type) {
+        return queues[type.ordinal()].maxDepth();
+    }
+
+    long dropCount(MeasurementType type) {
+        return queues[type.ordinal()].dropCount();
+    }
+
+    private synchronized void start() {
+        if (thread == null) {
+            var started = new Thread(this::run, TAG);
+            started.setDaemon(true);
+            thread = started;
+            started.start();
+        }
+    }
+
+    private void run() {
+        long idleSince = System.nanoTime();
+        while (true) {
+            if (drainAll() > 0) {
+                idleSince = System.nanoTime();
+                continue;
+            }
+            if (System.nanoTime() - idleSince >= idleTimeoutNanos) {
+                synchronized (this) {
+                    thread = null;
+                }
+                // A sample offered while this thread was on its way out saw it still running and
+                // did not start another one. Clearing the volatile thread field before looking
+                // at the queues pairs with offer() publishing before it reads the field.
+                if (!isEmpty()) {
+                    start();
+                }
+                return;
+            }
+            // Same pairing: parked is set before the last look at the queues, and offer()
+            // publishes before it reads parked, so one side always sees the other.
+            parked = true;
+            if (isEmpty()) {
+                LockSupport.parkNanos(this, idleTimeoutNanos);
+            }
+            parked = false;
+        }
+    }
+
+    // Tasks are claimed before the queues are drained: everything offered before a task was
+    // submitted is visible by then, so it is ingested ahead of the task.
+    private int drainAll() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            claimedTasks.add(task);
+        }
+        int drained = claimedTasks.size();
+        for (MeasurementType type : MeasurementType.values()) {
+            try {
+                drained += queues[type.ordinal()].drainTo(type, sink);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error ingesting " + type + " samples", e);
+            }
+        }
+        for (Runnable claimed : claimedTasks) {
+            try {
+                claimed.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error running ingest task", e);
+            }
+        }
+        claimedTasks.clear();
+        return drained;
+    }
+
+    private boolean isEmpty() {
+        if (!tasks.isEmpty()) {
+            return false;
+        }
+        for (SpscSampleQueue queue : queues) {
+            if (!queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
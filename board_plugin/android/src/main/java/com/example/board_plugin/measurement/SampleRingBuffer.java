@@ -0,0 +1,224 @@
+package com.example.board_plugin.measurement;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SampleRingBuffer {
+
+    private final int capacity;
+    private final int mask;
+    private final int components;
+    private final OverflowPolicy overflowPolicy;
+
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private final float[] w;
+    private final long[] timestamps;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+    private volatile ConsumerCursor[] cursors = new ConsumerCursor[0];
+    private long retainedFrom = 0;
+
+    public SampleRingBuffer(int requestedCapacity, int components, OverflowPolicy overflowPolicy) {
+        if (requestedCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + requestedCapacity);
+        }
+        this.capacity = roundUpToPowerOfTwo(requestedCapacity);
+        this.mask = capacity - 1;
+        this.components = components;
+        this.overflowPolicy = overflowPolicy;
+        this.x = new float[capacity];
+        this.y = new float[capacity];
+        this.z = new float[capacity];
+        this.w = components > 3 ? new float[capacity] : null;
+        this.timestamps = new long[capacity];
+    }
+
+    private static int roundUpToPowerOfTwo(int value) {
+        int highest = Integer.highestOneBit(value);
+        return highest == value ? value : highest << 1;
+    }
+
+    public synchronized ConsumerCursor register(String name) {
+        for (ConsumerCursor cursor : cursors) {
+            if (cursor.name().equals(name)) {
+                return cursor;
+            }
+        }
+        // While nobody is registered the ring keeps the newest samples, so the first consumer
+        // picks them up instead of losing whatever arrived before it subscribed.
+        long h = head.get();
+        long start = cursors.length == 0 ? Math.max(retainedFrom, h - capacity) : h;
+        var cursor = new ConsumerCursor(name, start);
+        var updated = Arrays.copyOf(cursors, cursors.length + 1);
+        updated[cursors.length] = cursor;
+        cursors = updated;
+        return cursor;
+    }
+
+    public synchronized void unregister(ConsumerCursor cursor) {
+        cursors = Arrays.stream(cursors)
+                .filter(registered -> registered != cursor)
+                .toArray(ConsumerCursor[]::new);
+        if (cursors.length == 0) {
+            retainedFrom = cursor.position.get();
+        }
+    }
+
+    // Single producer only. A slot is reclaimed once every registered cursor has moved past it.
+    // A lagging cursor is pushed forward by the producer while that consumer may be copying the
+    // slot, so drain() only commits its copy if the cursor has not moved meanwhile.
+    //
+    // The ring is shared, so a full cursor can only keep its backlog by rejecting the sample for
+    // everyone. DROP_NEWEST does that only while every cursor is full; otherwise the consumers
+    // that kept up still get the sample and only the lagging ones lose their oldest slot. Either
+    // way the loss is counted on the cursors that had no room, never on the others.
+    public boolean add(float x, float y, float z, long timestamp) {
+        return add(x, y, z, 0f, timestamp);
+    }
+
+    public boolean add(float x, float y, float z, float w, long timestamp) {
+        long h = head.get();
+        var registered = cursors;
+        if (overflowPolicy == OverflowPolicy.DROP_NEWEST && registered.length > 0 && allFull(registered, h)) {
+            for (ConsumerCursor cursor : registered) {
+                cursor.overflowCount.incrementAndGet();
+            }
+            overflowCount.incrementAndGet();
+            return false;
+        }
+        boolean overflowed = false;
+        for (ConsumerCursor cursor : registered) {
+            long position = cursor.position.get();
+            if (h - position >= capacity && cursor.position.compareAndSet(position, position + 1)) {
+                cursor.overflowCount.incrementAndGet();
+                overflowed = true;
+            }
+        }
+        if (overflowed) {
+            overflowCount.incrementAndGet();
+        }
+
+        int slot = (int) (h & mask);
+        this.x[slot] = x;
+        this.y[slot] = y;
+        this.z[slot] = z;
+        if (this.w != null) {
+            this.w[slot] = w;
+        }
+        this.timestamps[slot] = timestamp;
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    private boolean allFull(ConsumerCursor[] registered, long h) {
+        for (ConsumerCursor cursor : registered) {
+            if (h - cursor.position.get() < capacity) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int pending(ConsumerCursor cursor) {
+        return (int) Math.min(capacity, head.get() - cursor.position.get());
+    }
+
+    public boolean hasPending() {
+        long h = head.get();
+        for (ConsumerCursor cursor : cursors) {
+            if (cursor.position.get() < h) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int components() {
+        return components;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long overflowCount() {
+        return overflowCount.get();
+    }
+
+    public OverflowPolicy overflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public SampleBatch drain(ConsumerCursor cursor) {
+        return drain(cursor, Long.MAX_VALUE);
+    }
+
+    // Only takes samples stamped at or before maxTimestamp; the rest stay pending for the next drain.
+    public SampleBatch drain(ConsumerCursor cursor, long maxTimestamp) {
+        while (true) {
+            long position = cursor.position.get();
+            long h = head.get();
+            int count = (int) (h - position);
+            if (count > capacity) {
+                continue;
+            }
+            if (count > 0 && maxTimestamp != Long.MAX_VALUE) {
+                count = countUpTo(position, count, maxTimestamp);
+            }
+            if (count == 0) {
+                return SampleBatch.empty(position, components);
+            }
+
+            float[] drainedX = new float[count];
+            float[] drainedY = new float[count];
+            float[] drainedZ = new float[count];
+            float[] drainedW = w != null ? new float[count] : null;
+            long[] drainedTimestamps = new long[count];
+            int start = (int) (position & mask);
+            int firstPart = Math.min(count, capacity - start);
+            copyRange(start, 0, firstPart, drainedX, drainedY, drainedZ, drainedW, drainedTimestamps);
+            copyRange(0, firstPart, count - firstPart, drainedX, drainedY, drainedZ, drainedW, drainedTimestamps);
+
+            if (cursor.position.compareAndSet(position, position + count)) {
+                return new SampleBatch(position, count, components,
+                        drainedX, drainedY, drainedZ, drainedW, drainedTimestamps);
+            }
+        }
+    }
+
+    // The longest run from the cursor stamped at or before maxTimestamp. Timestamps can step back
+    // after a reconnect or a packed notification, so this scans rather than bisects; a later sample
+    // that happens to be stamped earlier waits for the next drain instead of jumping the queue.
+    private int countUpTo(long position, int count, long maxTimestamp) {
+        for (int i = 0; i < count; i++) {
+            if (timestamps[(int) ((position + i) & mask)] > maxTimestamp) {
+                return i;
+            }
+        }
+        return count;
+    }
+
+    private void copyRange(int from, int to, int length, float[] drainedX, float[] drainedY, float[] drainedZ,
+                           float[] drainedW, long[] drainedTimestamps) {
+        System.arraycopy(x, from, drainedX, to, length);
+        System.arraycopy(y, from, drainedY, to, length);
+        System.arraycopy(z, from, drainedZ, to, length);
+        if (w != null) {
+            System.arraycopy(w, from, drainedW, to, length);
+        }
+        System.arraycopy(timestamps, from, drainedTimestamps, to, length);
+    }
+
+    public void clear() {
+        long h = head.get();
+        for (ConsumerCursor cursor : cursors) {
+            long position;
+            do {
+                position = cursor.position.get();
+            } while (position < h && !cursor.position.compareAndSet(position, h));
+        }
+    }
+}
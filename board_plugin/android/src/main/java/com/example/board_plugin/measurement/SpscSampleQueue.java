@@ -0,0 +1,91 @@
+package com.example.board_plugin.measurement;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded single-producer, single-consumer hand-off from a BLE callback thread to the ingest
+// thread. The producer only copies the sample into preallocated arrays and publishes the new
+// tail; a full queue drops the incoming sample rather than blocking the callback.
+final class SpscSampleQueue {
+
+    private final int capacity;
+    private final int mask;
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private final float[] w;
+    private final long[] timestamps;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long dropCount = 0;
+    private volatile long maxDepth = 0;
+
+    SpscSampleQueue(int requestedCapacity) {
+        int highest = Integer.highestOneBit(requestedCapacity);
+        this.capacity = highest == requestedCapacity ? requestedCapacity : highest << 1;
+        this.mask = capacity - 1;
+        this.x = new float[capacity];
+        this.y = new float[capacity];
+        this.z = new float[capacity];
+        this.w = new float[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    // Producer side.
+    boolean offer(float sx, float sy, float sz, float sw, long timestamp) {
+        long t = tail.get();
+        if (t - head.get() >= capacity) {
+            dropCount = dropCount + 1;
+            return false;
+        }
+        int index = (int) (t & mask);
+        x[index] = sx;
+        y[index] = sy;
+        z[index] = sz;
+        w[index] = sw;
+        timestamps[index] = timestamp;
+        // A full volatile store, not lazySet: the caller reads the consumer's parked flag next,
+        // and only store-load ordering between the two guarantees that either the consumer sees
+        // this sample before parking or the caller sees it parked and wakes it.
+        tail.set(t + 1);
+        return true;
+    }
+
+    // Consumer side. Hands every published sample to the sink and returns how many there were.
+    int drainTo(MeasurementType type, Backfill.SampleSink sink) {
+        long h = head.get();
+        long t = tail.get();
+        if (h == t) {
+            return 0;
+        }
+        if (t - h > maxDepth) {
+            maxDepth = t - h;
+        }
+        try {
+            for (long i = h; i < t; i++) {
+                int index = (int) (i & mask);
+                sink.accept(type, x[index], y[index], z[index], w[index], timestamps[index]);
+            }
+        } finally {
+            // A sample the sink choked on is not handed out again.
+            head.lazySet(t);
+        }
+        return (int) (t - h);
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    long depth() {
+        return tail.get() - head.get();
+    }
+
+    long maxDepth() {
+        return maxDepth;
+    }
+
+    long dropCount() {
+        return dropCount;
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.board_plugin.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Almost every counter here has a single writing thread, where an uncontended AtomicLong costs
+// no more than a LongAdder and reads without summing cells.
+public final class Counter {
+
+    private final AtomicLong value = new AtomicLong();
+
+    Counter() {
+    }
+
+    public void increment() {
+        value.incrementAndGet();
+    }
+
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
+
+    public long get() {
+        return value.get();
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.board_plugin.metrics;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Process-wide registry of counters, latency histograms and gauges. Hot paths look their
+// instruments up once and keep the reference; recording is lock-free and allocation-free, and
+// only snapshot() walks the registry.
+public final class PluginMetrics {
+
+    private static final String TAG = "PluginMetrics";
+    private static final long MAX_DUMP_FILE_BYTES = 256 * 1024;
+    private static final PluginMetrics SHARED = new PluginMetrics();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Map<String, Long>>> gaugeGroups = new ConcurrentHashMap<>();
+
+    private PluginMetrics() {
+    }
+
+    public static PluginMetrics shared() {
+        return SHARED;
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    // Gauges are read when a snapshot is taken; registering a name again replaces the supplier.
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    // For gauges whose keys come and go, such as one per buffer consumer. Each key shows up in
+    // the snapshot as <prefix>.<key>.
+    public void gauges(String prefix, Supplier<Map<String, Long>> supplier) {
+        gaugeGroups.put(prefix, supplier);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.get()));
+
+        Map<String, Object> gaugeValues = new TreeMap<>();
+        gauges.forEach((name, gauge) -> {
+            try {
+                gaugeValues.put(name, gauge.getAsLong());
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Gauge " + name + " failed: " + e.getMessage());
+            }
+        });
+        gaugeGroups.forEach((prefix, group) -> {
+            try {
+                group.get().forEach((key, value) -> gaugeValues.put(prefix + "." + key, value));
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Gauges " + prefix + " failed: " + e.getMessage());
+            }
+        });
+
+        Map<String, Object> histogramValues = new TreeMap<>();
+        histograms.forEach((name, histogram) -> histogramValues.put(name, histogram.snapshot()));
+
+        Map<String, Object> snapshot = new TreeMap<>();
+        snapshot.put("timestamp", System.currentTimeMillis());
+        snapshot.put("counters", counterValues);
+        snapshot.put("gauges", gaugeValues);
+        snapshot.put("histograms", histogramValues);
+        return snapshot;
+    }
+
+    // Appends the snapshot as one JSON line; the file is rotated to <name>.1 once it passes
+    // MAX_DUMP_FILE_BYTES, so at most two files are kept.
+    public void dump(File file) {
+        try {
+            if (file.length() > MAX_DUMP_FILE_BYTES) {
+                var previous = new File(file.getPath() + ".1");
+                if (previous.exists() && !previous.delete()) {
+                    Log.w(TAG, "Could not delete " + previous);
+                }
+                if (!file.renameTo(previous)) {
+                    Log.w(TAG, "Could not rotate " + file);
+                }
+            }
+            var json = new StringBuilder(1024);
+            appendJson(json, snapshot());
+            json.append('\n');
+            try (var out = new FileOutputStream(file, true)) {
+                out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write metrics to " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void appendJson(StringBuilder json, Object value) {
+        if (value instanceof Map<?, ?> map) {
+            json.append('{');
+            boolean first = true;
+            for (var entry : map.entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                json.append('"').append(entry.getKey()).append("\":");
+                appendJson(json, entry.getValue());
+            }
+            json.append('}');
+        } else {
+            json.append(value);
+        }
+    }
+}
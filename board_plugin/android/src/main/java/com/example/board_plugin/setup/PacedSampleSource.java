@@ -0,0 +1,97 @@
+package com.example.board_plugin.setup;
+
+import android.util.Log;
+
+import com.example.board_plugin.measurement.MeasurementHandler;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Runs a source on its own daemon thread, paced against System.nanoTime(). stop() only clears
+// the thread field; the loop notices at its next sample or wake-up, and a later start() runs a
+// fresh thread. That thread first waits for the previous one to exit, so a run that was stopped
+// mid-burst never feeds the handler alongside its replacement.
+abstract class PacedSampleSource implements SampleSource {
+
+    private final String tag;
+    private volatile Thread thread;
+    private Thread lastStarted;
+
+    PacedSampleSource(String tag) {
+        this.tag = tag;
+    }
+
+    @Override
+    public synchronized void start(MeasurementHandler handler, Listener listener) {
+        if (thread != null) {
+            return;
+        }
+        var previous = lastStarted;
+        var started = new Thread(() -> {
+            if (awaitExit(previous) && isRunning()) {
+                run(handler, listener);
+            }
+        }, tag);
+        started.setDaemon(true);
+        thread = started;
+        lastStarted = started;
+        started.start();
+        Log.i(tag, "Started");
+    }
+
+    @Override
+    public synchronized void stop() {
+        var current = thread;
+        thread = null;
+        if (current != null) {
+            LockSupport.unpark(current);
+            Log.i(tag, "Stopped");
+        }
+    }
+
+    abstract void run(MeasurementHandler handler, Listener listener);
+
+    private static boolean awaitExit(Thread previous) {
+        if (previous == null) {
+            return true;
+        }
+        try {
+            previous.join();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    final boolean isRunning() {
+        return thread == Thread.currentThread();
+    }
+
+    // Returns false if the source was stopped while waiting.
+    final boolean parkUntil(long deadlineNanos) {
+        long remaining;
+        while (isRunning() && (remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+        return isRunning();
+    }
+
+    // Ends the current run as a lost link, unless the source was stopped meanwhile.
+    final void disconnect(Listener listener, String reason) {
+        synchronized (this) {
+            if (!isRunning()) {
+                return;
+            }
+            thread = null;
+        }
+        Log.i(tag, "Disconnecting: " + reason);
+        listener.onDisconnected(reason);
+    }
+
+    // Ends the current run without reporting anything; the session stays up but goes quiet.
+    final synchronized void finish() {
+        if (isRunning()) {
+            thread = null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.board_plugin.setup;
+
+import android.util.Log;
+
+import com.example.board_plugin.measurement.MeasurementHandler;
+import com.example.board_plugin.measurement.MeasurementType;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+// Replays a recorded session file, one sample per line:
+//
+//   <type>,<timestamp millis>,<x>,<y>,<z>[,<w>]
+//
+// with types named as in the channel protocol ("acceleration", "quaternion", ...) and lines
+// starting with '#' ignored. The gaps between recorded timestamps are kept, divided by the
+// speed-up, and samples are stamped with the time they are replayed, so downstream they look
+// like a live board running `speed` times faster. With loop set the file starts over at the end.
+public class ReplaySampleSource extends PacedSampleSource {
+
+    private static final String TAG = "ReplaySampleSource";
+    private static final float MAX_SPEED = 100f;
+    private static final long LOOP_GAP_NANOS = 1_000_000;
+
+    private final Config config;
+
+    public ReplaySampleSource(Config config) {
+        super(TAG);
+        this.config = config;
+    }
+
+    @Override
+    public List<String> activeSensors() {
+        return List.of("Replay " + config.path() + " @ " + config.speed() + "x");
+    }
+
+    // Recorded timestamps are per sample already; a rate left over from a board would make the
+    // sample clock spread out samples that replay within the same millisecond.
+    @Override
+    public void start(MeasurementHandler handler, Listener listener) {
+        for (MeasurementType type : MeasurementType.values()) {
+            handler.setOutputDataRate(type, 0);
+        }
+        // Streams the file does not contain never record, so they stay out of the cut-off.
+        handler.resetStreams(EnumSet.allOf(MeasurementType.class));
+        super.start(handler, listener);
+    }
+
+    @Override
+    void run(MeasurementHandler handler, Listener listener) {
+        long startNanos = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        long passStart = startNanos;
+        do {
+            long lastDue;
+            try {
+                lastDue = replayOnce(handler, passStart, startNanos, startMillis);
+            } catch (IOException e) {
+                Log.e(TAG, "Error reading " + config.path(), e);
+                disconnect(listener, "Cannot read replay file");
+                return;
+            }
+            if (lastDue == Long.MIN_VALUE) {
+                Log.w(TAG, "No samples in " + config.path());
+                finish();
+                return;
+            }
+            passStart = lastDue + LOOP_GAP_NANOS;
+        } while (config.loop() && isRunning());
+
+        if (isRunning()) {
+            Log.i(TAG, "Replay of " + config.path() + " finished");
+            finish();
+        }
+    }
+
+    // Returns when the last sample was due, or Long.MIN_VALUE if the file held none.
+    private long replayOnce(MeasurementHandler handler, long passStart, long startNanos, long startMillis)
+            throws IOException {
+        long firstRecorded = Long.MIN_VALUE;
+        long lastDue = Long.MIN_VALUE;
+        int skipped = 0;
+        try (var reader = new BufferedReader(new FileReader(config.path()))) {
+            String line;
+            while (isRunning() && (line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                var fields = line.split(",");
+                MeasurementType type;
+                long recorded;
+                float x;
+                float y;
+                float z;
+                float w;
+                try {
+                    type = MeasurementType.fromString(fields[0].trim());
+                    recorded = Long.parseLong(fields[1].trim());
+                    x = Float.parseFloat(fields[2].trim());
+                    y = Float.parseFloat(fields[3].trim());
+                    z = Float.parseFloat(fields[4].trim());
+                    w = fields.length > 5 ? Float.parseFloat(fields[5].trim()) : 0f;
+                } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                    skipped++;
+                    continue;
+                }
+                if (firstRecorded == Long.MIN_VALUE) {
+                    firstRecorded = recorded;
+                }
+                long due = passStart + (long) ((recorded - firstRecorded) * 1e6 / config.speed());
+                if (!parkUntil(due)) {
+                    break;
+                }
+                lastDue = due;
+                handler.performMeasurement(type, x, y, z, w, startMillis + (due - startNanos) / 1_000_000);
+            }
+        }
+        if (skipped > 0) {
+            Log.w(TAG, "Skipped " + skipped + " malformed lines in " + config.path());
+        }
+        return lastDue;
+    }
+
+    public record Config(String path, float speed, boolean loop) {
+
+        public Config {
+            if (path == null || path.isEmpty()) {
+                throw new IllegalArgumentException("Replay path is missing");
+            }
+            if (speed < 1 || speed > MAX_SPEED) {
+                throw new IllegalArgumentException("Replay speed must be between 1 and " + MAX_SPEED + ": " + speed);
+            }
+        }
+
+        public static Config fromArguments(Map<?, ?> arguments) {
+            return new Config(
+                    arguments.get("path") instanceof String path ? path : null,
+                    arguments.get("speed") instanceof Number speed ? speed.floatValue() : 1f,
+                    !(arguments.get("loop") instanceof Boolean loop) || loop
+            );
+        }
+    }
+}
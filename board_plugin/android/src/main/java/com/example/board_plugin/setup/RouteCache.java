@@ -0,0 +1,78 @@
+package com.example.board_plugin.setup;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Remembers which route ids were registered on a board and for which routing layout, so a
+// reconnect after a process restart can deserialize the board state and reattach to the same
+// routes instead of creating them again.
+//
+// Every board gets its own entries, keyed by MAC address, so saving or forgetting one board
+// leaves the routes cached for the others alone.
+public class RouteCache {
+
+    private static final String PREFERENCES = "board_route_cache";
+    private static final String KEY_ROUTING = "routing";
+    private static final String ROUTE_PREFIX = "route.";
+    // The single-board layout stored one unprefixed "macAddress" entry.
+    private static final String LEGACY_KEY_MAC_ADDRESS = "macAddress";
+
+    private final SharedPreferences preferences;
+
+    public RouteCache(Context context) {
+        this.preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        if (preferences.contains(LEGACY_KEY_MAC_ADDRESS)) {
+            preferences.edit().clear().apply();
+        }
+    }
+
+    public void save(String macAddress, String routing, Map<String, Integer> routeIds) {
+        var editor = preferences.edit();
+        removeEntries(editor, macAddress);
+        var prefix = prefix(macAddress);
+        editor.putString(prefix + KEY_ROUTING, routing);
+        routeIds.forEach((name, id) -> editor.putInt(prefix + ROUTE_PREFIX + name, id));
+        editor.apply();
+    }
+
+    public CachedRoutes load(String macAddress) {
+        var prefix = prefix(macAddress);
+        var routing = preferences.getString(prefix + KEY_ROUTING, null);
+        if (routing == null) {
+            return null;
+        }
+        var routePrefix = prefix + ROUTE_PREFIX;
+        Map<String, Integer> routeIds = new HashMap<>();
+        preferences.getAll().forEach((key, value) -> {
+            if (key.startsWith(routePrefix) && value instanceof Integer id) {
+                routeIds.put(key.substring(routePrefix.length()), id);
+            }
+        });
+        return new CachedRoutes(routing, routeIds);
+    }
+
+    public void clear(String macAddress) {
+        var editor = preferences.edit();
+        removeEntries(editor, macAddress);
+        editor.apply();
+    }
+
+    private void removeEntries(SharedPreferences.Editor editor, String macAddress) {
+        var prefix = prefix(macAddress);
+        for (String key : preferences.getAll().keySet()) {
+            if (key.startsWith(prefix)) {
+                editor.remove(key);
+            }
+        }
+    }
+
+    private static String prefix(String macAddress) {
+        return macAddress + "/";
+    }
+
+    public record CachedRoutes(String routing, Map<String, Integer> routeIds) {
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.board_plugin.setup;
+
+import com.example.board_plugin.measurement.MeasurementHandler;
+
+import java.util.List;
+import java.util.Map;
+
+// Where a session's samples come from when it is not a MetaWear board. Sources push into the
+// same MeasurementHandler hand-off the board's stream subscribers use, so ingest, buffering,
+// drains and uploads run exactly as they do with a live board.
+public interface SampleSource {
+
+    // Delivers samples on the source's own thread until stopped. A source whose link drops stops
+    // by itself and reports it to the listener, which is handled like an unexpected disconnect.
+    void start(MeasurementHandler handler, Listener listener);
+
+    void stop();
+
+    List<String> activeSensors();
+
+    // A missing argument or type "metawear" selects the board and returns null.
+    static SampleSource fromArguments(Map<?, ?> arguments) {
+        if (arguments == null) {
+            return null;
+        }
+        var type = arguments.get("type") instanceof String name ? name : "metawear";
+        return switch (type) {
+            case "metawear" -> null;
+            case "synthetic" -> new SyntheticSampleSource(SyntheticSampleSource.Config.fromArguments(arguments));
+            case "replay" -> new ReplaySampleSource(ReplaySampleSource.Config.fromArguments(arguments));
+            default -> throw new IllegalArgumentException("Unknown sample source: " + type);
+        };
+    }
+
+    interface Listener {
+        void onDisconnected(String reason);
+    }
+}
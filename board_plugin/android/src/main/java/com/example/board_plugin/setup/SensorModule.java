@@ -0,0 +1,32 @@
+package com.example.board_plugin.setup;
+
+import androidx.annotation.NonNull;
+
+public enum SensorModule {
+    ACCELEROMETER("accelerometer"),
+    GYROSCOPE("gyroscope"),
+    QUATERNION("quaternion"),
+    LINEAR_ACCELERATION("linearAcceleration"),
+    BATTERY("battery");
+
+    private final String name;
+
+    SensorModule(final String name) {
+        this.name = name;
+    }
+
+    public static SensorModule fromString(String name) {
+        for (SensorModule module : values()) {
+            if (module.name.equals(name)) {
+                return module;
+            }
+        }
+        throw new IllegalArgumentException("Unknown sensor module: " + name);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return name;
+    }
+}
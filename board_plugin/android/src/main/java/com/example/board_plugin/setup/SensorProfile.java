@@ -0,0 +1,190 @@
+package com.example.board_plugin.setup;
+
+import com.example.board_plugin.measurement.DecimationConfig;
+import com.example.board_plugin.measurement.MeasurementType;
+import com.mbientlab.metawear.module.Gyro;
+import com.mbientlab.metawear.module.SensorFusionBosch;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public record SensorProfile(float accelerometerOdr, float accelerometerRange,
+                            float gyroOdr, float gyroRange,
+                            float packedThresholdHz,
+                            boolean onboardLogging,
+                            Set<SensorModule> modules,
+                            Map<MeasurementType, DecimationConfig> decimation) {
+
+    public static final SensorProfile DEFAULT = new SensorProfile(
+            50f, 2f,
+            50f, 2000f,
+            100f,
+            false,
+            EnumSet.of(SensorModule.ACCELEROMETER, SensorModule.GYROSCOPE, SensorModule.BATTERY),
+            Map.of()
+    );
+
+    private static final float[] GYRO_ODR_HZ = {25f, 50f, 100f, 200f, 400f, 800f, 1600f, 3200f};
+    private static final float[] GYRO_RANGE_DPS = {2000f, 1000f, 500f, 250f, 125f};
+    private static final float[] FUSION_ACC_RANGE_G = {2f, 4f, 8f, 16f};
+    // Bosch fusion runs at a fixed rate in IMU_PLUS mode regardless of the raw sensor settings.
+    public static final float SENSOR_FUSION_ODR_HZ = 100f;
+    private static final String LEGACY_SENSOR_FUSION = "sensorFusion";
+
+    public SensorProfile {
+        modules = Collections.unmodifiableSet(
+                modules.isEmpty() ? EnumSet.noneOf(SensorModule.class) : EnumSet.copyOf(modules));
+        decimation = Map.copyOf(decimation);
+    }
+
+    public static SensorProfile fromArguments(Map<?, ?> arguments) {
+        if (arguments == null) {
+            return DEFAULT;
+        }
+
+        return new SensorProfile(
+                floatArgument(arguments, "accelerometerOdr", DEFAULT.accelerometerOdr()),
+                floatArgument(arguments, "accelerometerRange", DEFAULT.accelerometerRange()),
+                floatArgument(arguments, "gyroOdr", DEFAULT.gyroOdr()),
+                floatArgument(arguments, "gyroRange", DEFAULT.gyroRange()),
+                floatArgument(arguments, "packedThresholdHz", DEFAULT.packedThresholdHz()),
+                arguments.get("onboardLogging") instanceof Boolean logging ? logging : DEFAULT.onboardLogging(),
+                arguments.get("modules") instanceof List<?> modules ? parseModules(modules) : DEFAULT.modules(),
+                arguments.get("decimation") instanceof Map<?, ?> decimation ? parseDecimation(decimation) : DEFAULT.decimation()
+        );
+    }
+
+    private static float floatArgument(Map<?, ?> arguments, String key, float defaultValue) {
+        return arguments.get(key) instanceof Number value ? value.floatValue() : defaultValue;
+    }
+
+    private static Set<SensorModule> parseModules(Collection<?> names) {
+        Set<SensorModule> modules = EnumSet.noneOf(SensorModule.class);
+        for (Object name : names) {
+            // Older apps ask for both fusion outputs under one name.
+            if (LEGACY_SENSOR_FUSION.equals(name)) {
+                modules.add(SensorModule.QUATERNION);
+                modules.add(SensorModule.LINEAR_ACCELERATION);
+            } else {
+                modules.add(SensorModule.fromString(String.valueOf(name)));
+            }
+        }
+        return modules;
+    }
+
+    private static Map<MeasurementType, DecimationConfig> parseDecimation(Map<?, ?> arguments) {
+        Map<MeasurementType, DecimationConfig> configs = new EnumMap<>(MeasurementType.class);
+        for (MeasurementType type : MeasurementType.values()) {
+            if (arguments.get(type.toString()) instanceof Map<?, ?> config) {
+                configs.put(type, DecimationConfig.fromMap(config));
+            }
+        }
+        return configs;
+    }
+
+    // Everything that changes which routes get registered on the board. Rates and ranges are
+    // only sensor configuration and are written again on every connect.
+    public String routingKey() {
+        return modules + ";packedAcc=" + usePackedAccelerometer() + ";packedGyro=" + usePackedGyro()
+                + ";logging=" + onboardLogging;
+    }
+
+    public boolean isEnabled(SensorModule module) {
+        return modules.contains(module);
+    }
+
+    // Either fusion output runs the fusion algorithm on the board.
+    public boolean useSensorFusion() {
+        return isEnabled(SensorModule.QUATERNION) || isEnabled(SensorModule.LINEAR_ACCELERATION);
+    }
+
+    // Fusion takes over the accelerometer and gyro configuration, so raw streams are only set up
+    // when fusion is off.
+    public boolean useRawAccelerometer() {
+        return isEnabled(SensorModule.ACCELEROMETER) && !useSensorFusion();
+    }
+
+    public boolean useRawGyro() {
+        return isEnabled(SensorModule.GYROSCOPE) && !useSensorFusion();
+    }
+
+    // The measurement streams a board set up with this profile produces.
+    public Set<MeasurementType> streamedTypes() {
+        Set<MeasurementType> types = EnumSet.noneOf(MeasurementType.class);
+        if (useRawAccelerometer()) {
+            types.add(MeasurementType.ACCELERATION);
+        }
+        if (useRawGyro()) {
+            types.add(MeasurementType.ANGULAR_VELOCITY);
+        }
+        if (isEnabled(SensorModule.QUATERNION)) {
+            types.add(MeasurementType.QUATERNION);
+        }
+        if (isEnabled(SensorModule.LINEAR_ACCELERATION)) {
+            types.add(MeasurementType.LINEAR_ACCELERATION);
+        }
+        return types;
+    }
+
+    // The logger cannot record packed producers, so logging keeps the plain streams.
+    public boolean usePackedAccelerometer() {
+        return !onboardLogging && accelerometerOdr > packedThresholdHz;
+    }
+
+    public boolean usePackedGyro() {
+        return !onboardLogging && gyroOutputDataRateHz() > packedThresholdHz;
+    }
+
+    // The gyro only supports discrete settings, so pick the slowest rate that still covers the request.
+    private int gyroOutputDataRateIndex() {
+        for (int i = 0; i < GYRO_ODR_HZ.length; i++) {
+            if (GYRO_ODR_HZ[i] >= gyroOdr) {
+                return i;
+            }
+        }
+        return GYRO_ODR_HZ.length - 1;
+    }
+
+    public Gyro.OutputDataRate gyroOutputDataRate() {
+        return Gyro.OutputDataRate.values()[gyroOutputDataRateIndex()];
+    }
+
+    public float gyroOutputDataRateHz() {
+        return GYRO_ODR_HZ[gyroOutputDataRateIndex()];
+    }
+
+    public Gyro.Range gyroFullScaleRange() {
+        var ranges = Gyro.Range.values();
+        for (int i = GYRO_RANGE_DPS.length - 1; i >= 0; i--) {
+            if (GYRO_RANGE_DPS[i] >= gyroRange) {
+                return ranges[i];
+            }
+        }
+        return ranges[0];
+    }
+
+    public SensorFusionBosch.AccRange fusionAccRange() {
+        var ranges = SensorFusionBosch.AccRange.values();
+        for (int i = 0; i < FUSION_ACC_RANGE_G.length; i++) {
+            if (FUSION_ACC_RANGE_G[i] >= accelerometerRange) {
+                return ranges[i];
+            }
+        }
+        return ranges[ranges.length - 1];
+    }
+
+    public SensorFusionBosch.GyroRange fusionGyroRange() {
+        var ranges = SensorFusionBosch.GyroRange.values();
+        for (int i = ranges.length - 1; i >= 0; i--) {
+            if (GYRO_RANGE_DPS[i] >= gyroRange) {
+                return ranges[i];
+            }
+        }
+        return ranges[0];
+    }
+}
@@ -4,115 +4,522 @@ import android.util.Log;
 
 import com.example.board_plugin.measurement.MeasurementHandler;
 import com.example.board_plugin.measurement.MeasurementType;
+import com.mbientlab.metawear.AsyncDataProducer;
 import com.mbientlab.metawear.MetaWearBoard;
-import com.mbientlab.metawear.data.Acceleration;
-import com.mbientlab.metawear.data.AngularVelocity;
+import com.mbientlab.metawear.RouteComponent;
+import com.mbientlab.metawear.Subscriber;
 import com.mbientlab.metawear.module.Accelerometer;
 import com.mbientlab.metawear.module.Gyro;
+import com.mbientlab.metawear.module.Logging;
+import com.mbientlab.metawear.module.SensorFusionBosch;
 import com.mbientlab.metawear.module.Settings;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import bolts.Task;
 
 public class SensorSetupManager {
 
     private static final String TAG = "SensorSetupManager";
+    private static final String BATTERY_ROUTE = "battery";
+    private static final long ROUTE_WATCHDOG_MS = 3000;
+    // Generous for a full logger over BLE; past it the held-back live stream is let through.
+    private static final long LOG_DOWNLOAD_TIMEOUT_MS = 60_000;
     private final List<String> activeSensors = new ArrayList<>();
-    AtomicInteger pendingSensorSetups = new AtomicInteger(0);
+    private final Map<String, Integer> routeIds = new ConcurrentHashMap<>();
     MetaWearBoard board;
     MeasurementHandler measurementHandler = new MeasurementHandler();
+    private SensorProfile profile = SensorProfile.DEFAULT;
+    private SampleSource sampleSource;
+    private RouteCache routeCache;
+    private String routing;
     private byte batteryLevel = -1;
+    private volatile boolean loggingActive = false;
+    private volatile boolean sampleReceived = false;
+    // Bumped by every configureSensors() and clear(), so work scheduled for one setup can tell
+    // that the board has since been reconfigured or disconnected.
+    private volatile int setupGeneration = 0;
+
+    // Reattaches to the routes registered by an earlier connection when they still match the
+    // profile, otherwise clears the board and registers them again. The task completes once every
+    // sensor has been started.
+    public Task<Void> configureSensors() {
+        int generation = ++setupGeneration;
+        measurementHandler.resetStreams(profile.streamedTypes());
+        if (canReuseRoutes()) {
+            Log.i(TAG, "Reusing " + routeIds.size() + " registered routes");
+            sampleReceived = false;
+            reattachRoutes();
+            startLoggingIfRouted();
+            watchReusedRoutes(generation);
+            return Task.forResult(null);
+        }
 
-    public void setupAccelerometer() {
+        board.tearDown();
+        forgetRoutes();
+        routing = profile.routingKey();
+
+        List<Task<Void>> setups = new ArrayList<>();
+        if (profile.useRawAccelerometer()) {
+            setups.add(setupAccelerometer());
+        }
+        if (profile.useRawGyro()) {
+            setups.add(setupGyro());
+        }
+        if (profile.useSensorFusion()) {
+            if (profile.isEnabled(SensorModule.ACCELEROMETER) || profile.isEnabled(SensorModule.GYROSCOPE)) {
+                Log.w(TAG, "Sensor fusion enabled, raw accelerometer and gyro streams are skipped");
+            }
+            setups.add(setupSensorFusion());
+        }
+        if (profile.isEnabled(SensorModule.BATTERY)) {
+            setups.add(setupSettings());
+        }
+        return Task.whenAll(setups).continueWith(task -> {
+            startLoggingIfRouted();
+            saveRoutes();
+            return null;
+        });
+    }
+
+    private Task<Void> setupAccelerometer() {
         try {
             var accelerometer = board.getModule(Accelerometer.class);
-            if (accelerometer != null) {
-                accelerometer.acceleration().addRouteAsync(source -> source.stream((data, env) -> {
-                    measurementHandler.performMeasurement(MeasurementType.ACCELERATION, Acceleration.class, data);
-                })).continueWith(task -> {
-                    pendingSensorSetups.decrementAndGet();
-                    if (task.isFaulted()) {
-                        Log.e(TAG, "Error setting up accelerometer route", task.getError());
-                    } else {
-                        accelerometer.acceleration().start();
-                        accelerometer.start();
-                        synchronized (activeSensors) {
-                            activeSensors.add("Accelerometer");
-                        }
-                        Log.i(TAG, "Accelerometer sensor activated");
-                    }
-                    return null;
-                });
-            } else {
-                pendingSensorSetups.decrementAndGet();
+            if (accelerometer == null) {
                 Log.w(TAG, "Accelerometer module not available");
+                return Task.forResult(null);
             }
+            return accelerometerProducer(accelerometer)
+                    .addRouteAsync(source -> routeSamples(source, MeasurementType.ACCELERATION, true))
+                    .continueWith(task -> {
+                        if (task.isFaulted()) {
+                            Log.e(TAG, "Error setting up accelerometer route", task.getError());
+                        } else {
+                            routeIds.put(MeasurementType.ACCELERATION.toString(), task.getResult().id());
+                            startAccelerometer(accelerometer);
+                        }
+                        return null;
+                    });
         } catch (Exception e) {
-            pendingSensorSetups.decrementAndGet();
             Log.e(TAG, "Error setting up accelerometer", e);
+            return Task.forResult(null);
+        }
+    }
+
+    private AsyncDataProducer accelerometerProducer(Accelerometer accelerometer) {
+        return profile.usePackedAccelerometer()
+                ? accelerometer.packedAcceleration()
+                : accelerometer.acceleration();
+    }
+
+    private void startAccelerometer(Accelerometer accelerometer) {
+        accelerometer.configure()
+                .odr(profile.accelerometerOdr())
+                .range(profile.accelerometerRange())
+                .commit();
+        measurementHandler.setOutputDataRate(MeasurementType.ACCELERATION, accelerometer.getOdr());
+        accelerometerProducer(accelerometer).start();
+        accelerometer.start();
+        synchronized (activeSensors) {
+            activeSensors.add("Accelerometer");
         }
+        Log.i(TAG, "Accelerometer sensor activated at " + accelerometer.getOdr() + " Hz"
+                + (profile.usePackedAccelerometer() ? " (packed)" : ""));
     }
 
-    public void setupGyro() {
+    private Task<Void> setupGyro() {
         try {
             var gyro = board.getModule(Gyro.class);
-            if (gyro != null) {
-                gyro.angularVelocity().addRouteAsync(source -> source.stream((data, env) -> {
-                    measurementHandler.performMeasurement(MeasurementType.ANGULAR_VELOCITY, AngularVelocity.class, data);
-                })).continueWith(task -> {
-                    pendingSensorSetups.decrementAndGet();
-                    if (task.isFaulted()) {
-                        Log.e(TAG, "Error setting up gyro route", task.getError());
-                    } else {
-                        gyro.angularVelocity().start();
-                        gyro.start();
-                        synchronized (activeSensors) {
-                            activeSensors.add("Gyroscope");
-                        }
-                        Log.i(TAG, "Gyroscope sensor activated");
-                    }
-                    return null;
-                });
-            } else {
-                pendingSensorSetups.decrementAndGet();
+            if (gyro == null) {
                 Log.w(TAG, "Gyro module not available");
+                return Task.forResult(null);
             }
+            return gyroProducer(gyro)
+                    .addRouteAsync(source -> routeSamples(source, MeasurementType.ANGULAR_VELOCITY, true))
+                    .continueWith(task -> {
+                        if (task.isFaulted()) {
+                            Log.e(TAG, "Error setting up gyro route", task.getError());
+                        } else {
+                            routeIds.put(MeasurementType.ANGULAR_VELOCITY.toString(), task.getResult().id());
+                            startGyro(gyro);
+                        }
+                        return null;
+                    });
         } catch (Exception e) {
-            pendingSensorSetups.decrementAndGet();
             Log.e(TAG, "Error setting up gyro", e);
+            return Task.forResult(null);
         }
     }
 
-    public void setupSettings() {
+    private AsyncDataProducer gyroProducer(Gyro gyro) {
+        return profile.usePackedGyro()
+                ? gyro.packedAngularVelocity()
+                : gyro.angularVelocity();
+    }
+
+    private void startGyro(Gyro gyro) {
+        gyro.configure()
+                .odr(profile.gyroOutputDataRate())
+                .range(profile.gyroFullScaleRange())
+                .commit();
+        measurementHandler.setOutputDataRate(MeasurementType.ANGULAR_VELOCITY, profile.gyroOutputDataRateHz());
+        gyroProducer(gyro).start();
+        gyro.start();
+        synchronized (activeSensors) {
+            activeSensors.add("Gyroscope");
+        }
+        Log.i(TAG, "Gyroscope sensor activated at " + profile.gyroOutputDataRateHz() + " Hz"
+                + (profile.usePackedGyro() ? " (packed)" : ""));
+    }
+
+    private Task<Void> setupSensorFusion() {
         try {
-            var settings = board.getModule(Settings.class);
-            if (settings != null) {
-                settings.battery().addRouteAsync(source ->
-                        source.stream((data, env) -> {
-                            batteryLevel = data.value(Settings.BatteryState.class).charge;
-                        })
-                ).continueWith(task -> {
-                    pendingSensorSetups.decrementAndGet();
-                    if (task.isFaulted()) {
-                        Log.e(TAG, "Error setting up battery route", task.getError());
-                    } else {
-                        settings.battery().read();
-                        synchronized (activeSensors) {
-                            activeSensors.add("Battery");
-                        }
-                        Log.i(TAG, "Battery sensor activated");
-                    }
+            var sensorFusion = board.getModule(SensorFusionBosch.class);
+            if (sensorFusion == null) {
+                Log.w(TAG, "Sensor fusion module not available");
+                return Task.forResult(null);
+            }
+            Task<Void> routes = Task.forResult(null);
+            if (profile.isEnabled(SensorModule.QUATERNION)) {
+                routes = addFusionRoute(routes, sensorFusion.quaternion(), MeasurementType.QUATERNION);
+            }
+            if (profile.isEnabled(SensorModule.LINEAR_ACCELERATION)) {
+                routes = addFusionRoute(routes, sensorFusion.linearAcceleration(), MeasurementType.LINEAR_ACCELERATION);
+            }
+            return routes.continueWith(task -> {
+                if (task.isFaulted()) {
+                    Log.e(TAG, "Error setting up sensor fusion routes", task.getError());
+                } else {
+                    startSensorFusion(sensorFusion);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Error setting up sensor fusion", e);
+            return Task.forResult(null);
+        }
+    }
+
+    private Task<Void> addFusionRoute(Task<Void> previous, AsyncDataProducer producer, MeasurementType type) {
+        return previous
+                .onSuccessTask(task -> producer.addRouteAsync(source -> routeSamples(source, type, false)))
+                .onSuccess(task -> {
+                    routeIds.put(type.toString(), task.getResult().id());
                     return null;
                 });
-            } else {
-                pendingSensorSetups.decrementAndGet();
+    }
+
+    // Only the selected outputs are started; the fusion algorithm runs for whichever are.
+    private void startSensorFusion(SensorFusionBosch sensorFusion) {
+        sensorFusion.configure()
+                .mode(SensorFusionBosch.Mode.IMU_PLUS)
+                .accRange(profile.fusionAccRange())
+                .gyroRange(profile.fusionGyroRange())
+                .commit();
+        if (profile.isEnabled(SensorModule.QUATERNION)) {
+            measurementHandler.setOutputDataRate(MeasurementType.QUATERNION, SensorProfile.SENSOR_FUSION_ODR_HZ);
+            sensorFusion.quaternion().start();
+        }
+        if (profile.isEnabled(SensorModule.LINEAR_ACCELERATION)) {
+            measurementHandler.setOutputDataRate(MeasurementType.LINEAR_ACCELERATION, SensorProfile.SENSOR_FUSION_ODR_HZ);
+            sensorFusion.linearAcceleration().start();
+        }
+        sensorFusion.start();
+        synchronized (activeSensors) {
+            activeSensors.add("Sensor Fusion");
+        }
+        Log.i(TAG, "Sensor fusion activated at " + SensorProfile.SENSOR_FUSION_ODR_HZ + " Hz");
+    }
+
+    private Task<Void> setupSettings() {
+        try {
+            var settings = board.getModule(Settings.class);
+            if (settings == null) {
                 Log.w(TAG, "Settings module not available");
+                return Task.forResult(null);
             }
+            return settings.battery().addRouteAsync(source -> source.stream(batterySubscriber()))
+                    .continueWith(task -> {
+                        if (task.isFaulted()) {
+                            Log.e(TAG, "Error setting up battery route", task.getError());
+                        } else {
+                            routeIds.put(BATTERY_ROUTE, task.getResult().id());
+                            startSettings(settings);
+                        }
+                        return null;
+                    });
         } catch (Exception e) {
-            pendingSensorSetups.decrementAndGet();
             Log.e(TAG, "Error setting up settings", e);
+            return Task.forResult(null);
+        }
+    }
+
+    private Subscriber batterySubscriber() {
+        return (data, env) -> batteryLevel = data.value(Settings.BatteryState.class).charge;
+    }
+
+    private void startSettings(Settings settings) {
+        settings.battery().read();
+        synchronized (activeSensors) {
+            activeSensors.add("Battery");
+        }
+        Log.i(TAG, "Battery sensor activated");
+    }
+
+    private void routeSamples(RouteComponent source, MeasurementType type, boolean loggable) {
+        if (loggable && profile.onboardLogging()) {
+            source.multicast()
+                    .to().stream(streamSubscriber(type))
+                    .to().log(logSubscriber(type))
+                    .end();
+        } else {
+            source.stream(streamSubscriber(type));
+        }
+    }
+
+    private Subscriber streamSubscriber(MeasurementType type) {
+        return (data, env) -> {
+            if (!sampleReceived) {
+                sampleReceived = true;
+            }
+            measurementHandler.performMeasurement(type, data);
+        };
+    }
+
+    private Subscriber logSubscriber(MeasurementType type) {
+        return (data, env) -> measurementHandler.performLoggedMeasurement(type, data);
+    }
+
+    private List<String> expectedRoutes() {
+        List<String> routes = new ArrayList<>();
+        if (profile.useRawAccelerometer()) {
+            routes.add(MeasurementType.ACCELERATION.toString());
+        }
+        if (profile.useRawGyro()) {
+            routes.add(MeasurementType.ANGULAR_VELOCITY.toString());
+        }
+        if (profile.isEnabled(SensorModule.QUATERNION)) {
+            routes.add(MeasurementType.QUATERNION.toString());
+        }
+        if (profile.isEnabled(SensorModule.LINEAR_ACCELERATION)) {
+            routes.add(MeasurementType.LINEAR_ACCELERATION.toString());
+        }
+        if (profile.isEnabled(SensorModule.BATTERY)) {
+            routes.add(BATTERY_ROUTE);
+        }
+        return routes;
+    }
+
+    private boolean canReuseRoutes() {
+        if (routeIds.isEmpty() || !profile.routingKey().equals(routing)) {
+            return false;
+        }
+        for (String name : expectedRoutes()) {
+            var id = routeIds.get(name);
+            if (id == null || board.lookupRoute(id) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Subscribers only live in memory, so routes restored by deserialize() have to be handed
+    // new ones. Streams sit at index 0 and the logger, if any, at index 1.
+    private void reattachRoutes() {
+        if (profile.useRawAccelerometer()) {
+            resubscribe(MeasurementType.ACCELERATION, true);
+            startAccelerometer(board.getModule(Accelerometer.class));
+        }
+        if (profile.useRawGyro()) {
+            resubscribe(MeasurementType.ANGULAR_VELOCITY, true);
+            startGyro(board.getModule(Gyro.class));
+        }
+        if (profile.useSensorFusion()) {
+            if (profile.isEnabled(SensorModule.QUATERNION)) {
+                resubscribe(MeasurementType.QUATERNION, false);
+            }
+            if (profile.isEnabled(SensorModule.LINEAR_ACCELERATION)) {
+                resubscribe(MeasurementType.LINEAR_ACCELERATION, false);
+            }
+            startSensorFusion(board.getModule(SensorFusionBosch.class));
+        }
+        if (profile.isEnabled(SensorModule.BATTERY)) {
+            board.lookupRoute(routeIds.get(BATTERY_ROUTE)).resubscribe(0, batterySubscriber());
+            startSettings(board.getModule(Settings.class));
+        }
+    }
+
+    private void resubscribe(MeasurementType type, boolean loggable) {
+        var route = board.lookupRoute(routeIds.get(type.toString()));
+        route.resubscribe(0, streamSubscriber(type));
+        if (loggable && profile.onboardLogging()) {
+            route.resubscribe(1, logSubscriber(type));
+        }
+    }
+
+    // A board that was power cycled has lost its routes even though the cached state still lists
+    // them, which only shows up as silence. Rebuild if nothing arrives shortly after reattaching.
+    private void watchReusedRoutes(int generation) {
+        if (!profile.useRawAccelerometer() && !profile.useRawGyro()
+                && !profile.useSensorFusion()) {
+            return;
+        }
+        var watched = board;
+        Task.delay(ROUTE_WATCHDOG_MS).continueWithTask(task -> {
+            if (sampleReceived || setupGeneration != generation || board != watched || !watched.isConnected()) {
+                return Task.<Void>forResult(null);
+            }
+            Log.w(TAG, "No samples on reused routes, registering them again");
+            forgetRoutes();
+            return configureSensors();
+        }).continueWith(task -> {
+            if (task.isFaulted()) {
+                Log.e(TAG, "Error registering routes again", task.getError());
+            }
+            return null;
+        });
+    }
+
+    private void saveRoutes() {
+        try {
+            board.serialize();
+        } catch (IOException e) {
+            Log.w(TAG, "Error serializing board state", e);
+            return;
+        }
+        if (routeCache != null) {
+            routeCache.save(board.getMacAddress(), routing, routeIds);
+        }
+    }
+
+    // Called before connecting. A board object handed out again by BtleService still holds its
+    // routes; a fresh one after a process restart gets them back from the serialized state.
+    public void restoreBoardState() {
+        if (!routeIds.isEmpty() || routeCache == null) {
+            return;
+        }
+        var cached = routeCache.load(board.getMacAddress());
+        if (cached == null || cached.routeIds().isEmpty()) {
+            return;
+        }
+        try {
+            board.deserialize();
+            routeIds.putAll(cached.routeIds());
+            routing = cached.routing();
+            Log.i(TAG, "Restored board state with " + routeIds.size() + " routes");
+        } catch (IOException | ClassNotFoundException e) {
+            Log.w(TAG, "Error restoring board state", e);
+            routeCache.clear(board.getMacAddress());
+        }
+    }
+
+    private void forgetRoutes() {
+        routeIds.clear();
+        routing = null;
+        if (routeCache != null && board != null) {
+            routeCache.clear(board.getMacAddress());
+        }
+    }
+
+    // A deliberate disconnect only quiets the board. Its routes stay registered and cached, so
+    // the next connect reattaches to them; they are cleared when configureSensors() finds they no
+    // longer match the profile, or when the watchdog finds them silent.
+    public void tearDown() {
+        stopLogging();
+        stopSensors();
+    }
+
+    private void stopSensors() {
+        if (routeIds.containsKey(MeasurementType.ACCELERATION.toString())) {
+            var accelerometer = board.getModule(Accelerometer.class);
+            if (accelerometer != null) {
+                accelerometer.stop();
+                accelerometerProducer(accelerometer).stop();
+            }
+        }
+        if (routeIds.containsKey(MeasurementType.ANGULAR_VELOCITY.toString())) {
+            var gyro = board.getModule(Gyro.class);
+            if (gyro != null) {
+                gyro.stop();
+                gyroProducer(gyro).stop();
+            }
+        }
+        if (routeIds.containsKey(MeasurementType.QUATERNION.toString())
+                || routeIds.containsKey(MeasurementType.LINEAR_ACCELERATION.toString())) {
+            var sensorFusion = board.getModule(SensorFusionBosch.class);
+            if (sensorFusion != null) {
+                sensorFusion.stop();
+                sensorFusion.quaternion().stop();
+                sensorFusion.linearAcceleration().stop();
+            }
+        }
+        Log.i(TAG, "Sensors stopped, keeping " + routeIds.size() + " routes for the next connect");
+    }
+
+    // Only the raw accelerometer and gyro routes have loggers, and the logger is started once
+    // both of them are in place rather than by each sensor.
+    private void startLoggingIfRouted() {
+        if (!profile.onboardLogging()
+                || !(routeIds.containsKey(MeasurementType.ACCELERATION.toString())
+                || routeIds.containsKey(MeasurementType.ANGULAR_VELOCITY.toString()))) {
+            return;
+        }
+        var logging = board.getModule(Logging.class);
+        if (logging != null) {
+            logging.start(true);
+            loggingActive = true;
+            Log.i(TAG, "On-board logging started");
+        } else {
+            Log.w(TAG, "Logging module not available");
+        }
+    }
+
+    public boolean hasLoggedSamples() {
+        return loggingActive;
+    }
+
+    // Downloads everything the board logged while the link was down and merges it into the
+    // measurement buffers. Routes are left in place for configureSensors() to reuse.
+    public Task<Void> downloadLoggedSamples() {
+        var logging = board.getModule(Logging.class);
+        if (logging == null) {
+            loggingActive = false;
+            return Task.forResult(null);
+        }
+        logging.stop();
+        measurementHandler.beginBackfill();
+        Log.i(TAG, "Downloading on-board log");
+        var download = logging.downloadAsync();
+        return Task.whenAny(List.of(download, Task.delay(LOG_DOWNLOAD_TIMEOUT_MS))).continueWith(task -> {
+            loggingActive = false;
+            if (!download.isCompleted()) {
+                // The live stream cannot wait any longer; whatever arrives later is dropped.
+                Log.w(TAG, "On-board log download timed out");
+                measurementHandler.abandonBackfill("log download timed out");
+                return null;
+            }
+            measurementHandler.endBackfill();
+            if (download.isFaulted()) {
+                Log.e(TAG, "Error downloading on-board log", download.getError());
+            }
+            return null;
+        });
+    }
+
+    public void stopLogging() {
+        if (!loggingActive) {
+            return;
         }
+        var logging = board.getModule(Logging.class);
+        if (logging != null) {
+            logging.stop();
+            logging.clearEntries();
+        }
+        loggingActive = false;
     }
 
     public byte getBatteryLevel() {
@@ -120,19 +527,57 @@ public class SensorSetupManager {
     }
 
     public void clear() {
+        setupGeneration++;
         activeSensors.clear();
         batteryLevel = -1;
     }
 
     public void start() {
         activeSensors.clear();
-        pendingSensorSetups = new AtomicInteger(9);
+    }
+
+    public SensorProfile getProfile() {
+        return profile;
+    }
+
+    public void setProfile(SensorProfile profile) {
+        this.profile = profile;
+        measurementHandler.configureDecimation(profile.decimation());
+    }
+
+    public void setRouteCache(RouteCache routeCache) {
+        this.routeCache = routeCache;
     }
 
     public List<String> getActiveSensors() {
         return activeSensors;
     }
 
+    // Without a sample source the session streams from the MetaWear board set by setBoard().
+    public boolean hasSampleSource() {
+        return sampleSource != null;
+    }
+
+    public void setSampleSource(SampleSource sampleSource) {
+        if (this.sampleSource != null && this.sampleSource != sampleSource) {
+            this.sampleSource.stop();
+        }
+        this.sampleSource = sampleSource;
+    }
+
+    public void startSampleSource(SampleSource.Listener listener) {
+        sampleSource.start(measurementHandler, listener);
+        synchronized (activeSensors) {
+            activeSensors.addAll(sampleSource.activeSensors());
+        }
+    }
+
+    public void stopSampleSource() {
+        if (sampleSource != null) {
+            sampleSource.stop();
+        }
+    }
+
     public MeasurementHandler getMeasurementHandler() {
         return measurementHandler;
     }
@@ -142,6 +587,10 @@ public class SensorSetupManager {
     }
 
     public void setBoard(MetaWearBoard board) {
+        if (this.board != board) {
+            routeIds.clear();
+            routing = null;
+        }
         this.board = board;
     }
 }
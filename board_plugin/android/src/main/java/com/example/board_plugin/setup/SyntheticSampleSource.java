@@ -0,0 +1,146 @@
+package com.example.board_plugin.setup;
+
+import com.example.board_plugin.measurement.MeasurementHandler;
+import com.example.board_plugin.measurement.MeasurementType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// Generates motion-like samples without a board, for load testing the buffer, drain and upload
+// path. Samples arrive in notifications of burstSize, like packed BLE notifications; each one is
+// delivered up to jitterMs late and stamped with its delivery time, as the SDK does, and the
+// handler's sample clock spreads the burst out again. With a mean disconnect interval the link
+// drops after an exponentially distributed time, which exercises the reconnect cycle.
+public class SyntheticSampleSource extends PacedSampleSource {
+
+    private final Config config;
+    private final Random random;
+
+    public SyntheticSampleSource(Config config) {
+        super("SyntheticSampleSource");
+        this.config = config;
+        this.random = new Random(config.seed());
+    }
+
+    @Override
+    public List<String> activeSensors() {
+        List<String> sensors = new ArrayList<>();
+        for (MeasurementType type : config.types()) {
+            sensors.add("Synthetic " + type + " @ " + config.hz() + " Hz");
+        }
+        return sensors;
+    }
+
+    @Override
+    public void start(MeasurementHandler handler, Listener listener) {
+        for (MeasurementType type : config.types()) {
+            handler.setOutputDataRate(type, config.hz());
+        }
+        handler.resetStreams(config.types());
+        super.start(handler, listener);
+    }
+
+    @Override
+    void run(MeasurementHandler handler, Listener listener) {
+        double notificationPeriodNanos = 1e9 * config.burstSize() / config.hz();
+        long jitterNanos = config.jitterMs() * 1_000_000;
+        long startNanos = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        long disconnectAt = config.meanDisconnectIntervalMs() > 0
+                ? startNanos + nextDisconnectDelayNanos()
+                : Long.MAX_VALUE;
+        long lastDelivery = startNanos;
+        long sample = 0;
+
+        for (long notification = 0; ; notification++) {
+            long due = startNanos + Math.round(notification * notificationPeriodNanos);
+            // The link delivers in order, so a late notification holds back the ones behind it.
+            long deliverAt = Math.max(lastDelivery, due + (long) (random.nextDouble() * jitterNanos));
+            if (deliverAt >= disconnectAt) {
+                parkUntil(disconnectAt);
+                disconnect(listener, "Synthetic disconnect");
+                return;
+            }
+            if (!parkUntil(deliverAt)) {
+                return;
+            }
+            lastDelivery = deliverAt;
+            long timestamp = startMillis + (deliverAt - startNanos) / 1_000_000;
+            for (int i = 0; i < config.burstSize() && isRunning(); i++, sample++) {
+                for (MeasurementType type : config.types()) {
+                    emit(handler, type, (double) sample / config.hz(), timestamp);
+                }
+            }
+        }
+    }
+
+    private long nextDisconnectDelayNanos() {
+        return (long) (-Math.log(1 - random.nextDouble()) * config.meanDisconnectIntervalMs() * 1_000_000);
+    }
+
+    // A slow wobble on every axis, gravity on z, and a steady rotation about z for quaternions.
+    private static void emit(MeasurementHandler handler, MeasurementType type, double seconds, long timestamp) {
+        if (type == MeasurementType.QUATERNION) {
+            double half = Math.PI * seconds / 8;
+            handler.performMeasurement(type, 0f, 0f, (float) Math.sin(half), (float) Math.cos(half), timestamp);
+            return;
+        }
+        double phase = 2 * Math.PI * seconds;
+        float gravity = type == MeasurementType.ACCELERATION ? 1f : 0f;
+        handler.performMeasurement(type,
+                (float) Math.sin(phase),
+                (float) Math.cos(0.5 * phase),
+                gravity + (float) (0.05 * Math.sin(3 * phase)),
+                0f,
+                timestamp);
+    }
+
+    public record Config(float hz, int burstSize, long jitterMs, long meanDisconnectIntervalMs, long seed,
+                         Set<MeasurementType> types) {
+
+        public static final Config DEFAULT = new Config(100f, 1, 0, 0, 0, EnumSet.of(MeasurementType.ACCELERATION));
+
+        public Config {
+            if (hz <= 0) {
+                throw new IllegalArgumentException("Sample rate must be positive: " + hz);
+            }
+            if (burstSize < 1) {
+                throw new IllegalArgumentException("Burst size must be at least 1: " + burstSize);
+            }
+            if (jitterMs < 0 || meanDisconnectIntervalMs < 0) {
+                throw new IllegalArgumentException("Jitter and disconnect interval must not be negative");
+            }
+            if (types.isEmpty()) {
+                throw new IllegalArgumentException("At least one measurement type is required");
+            }
+            types = Collections.unmodifiableSet(EnumSet.copyOf(types));
+        }
+
+        public static Config fromArguments(Map<?, ?> arguments) {
+            return new Config(
+                    arguments.get("hz") instanceof Number hz ? hz.floatValue() : DEFAULT.hz(),
+                    arguments.get("burstSize") instanceof Number size ? size.intValue() : DEFAULT.burstSize(),
+                    arguments.get("jitterMs") instanceof Number jitter ? jitter.longValue() : DEFAULT.jitterMs(),
+                    arguments.get("meanDisconnectIntervalMs") instanceof Number interval
+                            ? interval.longValue()
+                            : DEFAULT.meanDisconnectIntervalMs(),
+                    arguments.get("seed") instanceof Number seed ? seed.longValue() : DEFAULT.seed(),
+                    arguments.get("types") instanceof List<?> types ? parseTypes(types) : DEFAULT.types()
+            );
+        }
+
+        private static Set<MeasurementType> parseTypes(Collection<?> names) {
+            Set<MeasurementType> types = EnumSet.noneOf(MeasurementType.class);
+            for (Object name : names) {
+                types.add(MeasurementType.fromString(String.valueOf(name)));
+            }
+            return types;
+        }
+    }
+}
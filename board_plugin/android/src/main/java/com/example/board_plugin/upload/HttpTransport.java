@@ -0,0 +1,17 @@
+package com.example.board_plugin.upload;
+
+import java.io.IOException;
+import java.util.Map;
+
+// The only part of the uploader that touches the network, so it can be pointed at a local
+// stand-in server or replaced outright.
+public interface HttpTransport {
+
+    // An IOException means no response arrived at all.
+    Response post(String url, byte[] body, Map<String, String> headers) throws IOException;
+
+    // retryAfterMs is how long the server asked the client to wait before retrying, or 0 when
+    // the response had no usable Retry-After header.
+    record Response(int status, long retryAfterMs) {
+    }
+}
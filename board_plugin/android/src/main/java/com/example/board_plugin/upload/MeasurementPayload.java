@@ -0,0 +1,82 @@
+package com.example.board_plugin.upload;
+
+import com.example.board_plugin.measurement.MeasurementSnapshot;
+import com.example.board_plugin.measurement.SampleBatch;
+
+import java.nio.charset.StandardCharsets;
+
+// Writes the same JSON body the app posts to /api/measurements:
+// {"macAddress": ..., "measurements": [{"type": ..., "payload": [{"data": {...}, "timestamp": ...}]}]}
+// Values are rounded to three decimals like the Dart Measurement model does.
+public final class MeasurementPayload {
+
+    private MeasurementPayload() {
+    }
+
+    public static byte[] encode(String macAddress, MeasurementSnapshot snapshot) {
+        var json = new StringBuilder(64 + snapshot.sampleCount() * 72);
+        json.append("{\"macAddress\":");
+        appendString(json, macAddress);
+        json.append(",\"measurements\":[");
+        boolean firstType = true;
+        for (var entry : snapshot.batches().entrySet()) {
+            var batch = entry.getValue();
+            if (batch.isEmpty()) {
+                continue;
+            }
+            if (!firstType) {
+                json.append(',');
+            }
+            firstType = false;
+            json.append("{\"type\":\"").append(entry.getKey()).append("\",\"payload\":[");
+            appendSamples(json, batch);
+            json.append("]}");
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendSamples(StringBuilder json, SampleBatch batch) {
+        boolean hasW = batch.components() > 3;
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"data\":{");
+            if (hasW) {
+                json.append("\"w\":").append(round(batch.w(i))).append(',');
+            }
+            json.append("\"x\":").append(round(batch.x(i)))
+                    .append(",\"y\":").append(round(batch.y(i)))
+                    .append(",\"z\":").append(round(batch.z(i)))
+                    .append("},\"timestamp\":").append(batch.timestamp(i)).append('}');
+        }
+    }
+
+    // The address comes from the app, so it is escaped rather than trusted to be a bare MAC.
+    static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+
+    private static double round(float value) {
+        return Math.round(value * 1000.0) / 1000.0;
+    }
+}
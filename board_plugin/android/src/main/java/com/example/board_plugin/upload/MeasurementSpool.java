@@ -0,0 +1,324 @@
+package com.example.board_plugin.upload;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+// Append-only, segmented write-ahead log of upload batches. A batch is written here before the
+// uploader tries to send it and stays until the server has accepted it, so batches survive the
+// process being killed between draining the boards and a successful upload.
+//
+// Each segment is a run of records: [length:int][crc32:int][payload]. Appends are fsynced once
+// per sync() rather than per record. The delivery position is kept in a small side file so that
+// batches already delivered are not sent again after a restart. On open, a record that is
+// truncated or fails its checksum ends the segment it is in; a torn tail is cut off.
+final class MeasurementSpool {
+
+    private static final String TAG = "MeasurementSpool";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String POSITION_FILE = "position";
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 16 << 20;
+    static final long MAX_SEGMENT_BYTES = 1 << 20;
+    static final long MAX_SPOOL_BYTES = 64L << 20;
+
+    private final File directory;
+    private final List<Long> segments = new ArrayList<>();
+
+    private FileOutputStream writer;
+    private long writerSegment;
+    private long writerOffset;
+    private boolean unsynced = false;
+
+    private long readSegment;
+    private long readOffset;
+    private SpooledBatch peeked;
+    private long peekedEnd;
+
+    private MeasurementSpool(File directory) {
+        this.directory = directory;
+    }
+
+    static MeasurementSpool open(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create spool directory " + directory);
+        }
+        var spool = new MeasurementSpool(directory);
+        spool.recover();
+        return spool;
+    }
+
+    void append(String macAddress, int sampleCount, byte[] body) throws IOException {
+        var payload = new ByteArrayOutputStream(body.length + macAddress.length() + 8);
+        var out = new DataOutputStream(payload);
+        out.writeUTF(macAddress);
+        out.writeInt(sampleCount);
+        out.write(body);
+        byte[] bytes = payload.toByteArray();
+
+        var crc = new CRC32();
+        crc.update(bytes);
+        // Header and payload go out in one write so a crash cannot leave a header on its own.
+        var record = ByteBuffer.allocate(RECORD_HEADER_BYTES + bytes.length)
+                .putInt(bytes.length)
+                .putInt((int) crc.getValue())
+                .put(bytes);
+        writer.write(record.array());
+        writerOffset += record.capacity();
+        unsynced = true;
+
+        if (writerOffset >= MAX_SEGMENT_BYTES) {
+            sync();
+            startSegment(writerSegment + 1);
+        }
+        enforceSizeLimit();
+    }
+
+    // One fsync covers every record appended since the last call.
+    void sync() throws IOException {
+        if (unsynced) {
+            writer.getFD().sync();
+            unsynced = false;
+        }
+    }
+
+    boolean isEmpty() {
+        return readSegment == writerSegment && readOffset >= writerOffset;
+    }
+
+    // The oldest batch not yet delivered, or null when everything has been.
+    SpooledBatch peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        while (!isEmpty()) {
+            var record = readRecord(segmentFile(readSegment), readOffset);
+            if (record != null) {
+                peeked = record.batch();
+                peekedEnd = record.end();
+                return peeked;
+            }
+            // Nothing readable is left in this segment; it is either drained or damaged.
+            if (readSegment == writerSegment) {
+                return null;
+            }
+            dropSegment(readSegment);
+        }
+        return null;
+    }
+
+    // Marks the batch returned by peek() as delivered.
+    void acknowledge() throws IOException {
+        if (peeked == null) {
+            return;
+        }
+        peeked = null;
+        readOffset = peekedEnd;
+        if (readSegment == writerSegment && readOffset >= writerOffset) {
+            // Fully delivered: start over in a fresh segment instead of growing this one.
+            long drained = writerSegment;
+            startSegment(drained + 1);
+            deleteSegmentFile(drained);
+            readSegment = writerSegment;
+            readOffset = 0;
+        }
+        savePosition();
+    }
+
+    void close() {
+        try {
+            sync();
+            writer.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing spool", e);
+        }
+    }
+
+    private void recover() throws IOException {
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.add(Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+        }
+        segments.sort(null);
+
+        loadPosition();
+        while (!segments.isEmpty() && segments.get(0) < readSegment) {
+            deleteSegmentFile(segments.remove(0));
+        }
+        if (segments.isEmpty()) {
+            startSegment(readSegment);
+            readOffset = 0;
+            return;
+        }
+        if (segments.get(0) > readSegment) {
+            readSegment = segments.get(0);
+            readOffset = 0;
+        }
+
+        // Appends continue in the newest segment, after its last intact record.
+        long last = segments.get(segments.size() - 1);
+        long validEnd = validLength(segmentFile(last));
+        try (var file = new RandomAccessFile(segmentFile(last), "rw")) {
+            if (file.length() > validEnd) {
+                Log.w(TAG, "Cutting " + (file.length() - validEnd) + " torn bytes from segment " + last);
+                file.setLength(validEnd);
+            }
+        }
+        writerSegment = last;
+        writerOffset = validEnd;
+        writer = new FileOutputStream(segmentFile(last), true);
+        if (readSegment == writerSegment) {
+            readOffset = Math.min(readOffset, writerOffset);
+        }
+        Log.i(TAG, "Recovered " + segments.size() + " spool segments");
+    }
+
+    private static long validLength(File file) throws IOException {
+        long offset = 0;
+        RecordRead record;
+        while ((record = readRecord(file, offset)) != null) {
+            offset = record.end();
+        }
+        return offset;
+    }
+
+    private static RecordRead readRecord(File file, long offset) throws IOException {
+        try (var raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() - offset < RECORD_HEADER_BYTES) {
+                return null;
+            }
+            raf.seek(offset);
+            int length = raf.readInt();
+            int checksum = raf.readInt();
+            if (length < 0 || length > MAX_RECORD_BYTES || raf.length() - offset - RECORD_HEADER_BYTES < length) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            raf.readFully(bytes);
+            var crc = new CRC32();
+            crc.update(bytes);
+            if ((int) crc.getValue() != checksum) {
+                Log.w(TAG, "Checksum mismatch in " + file.getName() + " at " + offset);
+                return null;
+            }
+
+            var in = new DataInputStream(new ByteArrayInputStream(bytes));
+            String macAddress = in.readUTF();
+            int sampleCount = in.readInt();
+            byte[] body = Arrays.copyOfRange(bytes, length - in.available(), length);
+            return new RecordRead(new SpooledBatch(macAddress, sampleCount, body),
+                    offset + RECORD_HEADER_BYTES + length);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void startSegment(long segment) throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+        writer = new FileOutputStream(segmentFile(segment), false);
+        writerSegment = segment;
+        writerOffset = 0;
+        if (!segments.contains(segment)) {
+            segments.add(segment);
+        }
+    }
+
+    // Oldest undelivered batches go first when the disk budget is used up.
+    private void enforceSizeLimit() throws IOException {
+        long total = 0;
+        for (long segment : segments) {
+            total += segment == writerSegment ? writerOffset : segmentFile(segment).length();
+        }
+        while (total > MAX_SPOOL_BYTES && segments.size() > 1) {
+            long oldest = segments.get(0);
+            total -= segmentFile(oldest).length();
+            Log.w(TAG, "Spool over " + (MAX_SPOOL_BYTES >> 20) + " MB, dropping undelivered segment " + oldest);
+            dropSegment(oldest);
+        }
+    }
+
+    private void dropSegment(long segment) throws IOException {
+        deleteSegmentFile(segment);
+        if (readSegment == segment) {
+            peeked = null;
+            readSegment = segments.isEmpty() ? writerSegment : segments.get(0);
+            readOffset = 0;
+            savePosition();
+        }
+    }
+
+    private void deleteSegmentFile(long segment) {
+        segments.remove(Long.valueOf(segment));
+        var file = segmentFile(segment);
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete spool segment " + file.getName());
+        }
+    }
+
+    private void loadPosition() {
+        var file = new File(directory, POSITION_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        try (var in = new DataInputStream(new FileInputStream(file))) {
+            long segment = in.readLong();
+            long offset = in.readLong();
+            // The third value guards against a position file cut short or left over from a bug.
+            if (in.readLong() == (segment ^ offset)) {
+                readSegment = segment;
+                readOffset = offset;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Ignoring unreadable spool position: " + e.getMessage());
+        }
+    }
+
+    // Written to a temporary file and renamed into place, so a crash leaves either the old or the
+    // new position. A stale position only means a batch is sent twice, never that one is skipped.
+    private void savePosition() throws IOException {
+        var temporary = new File(directory, POSITION_FILE + ".tmp");
+        try (var stream = new FileOutputStream(temporary); var out = new DataOutputStream(stream)) {
+            out.writeLong(readSegment);
+            out.writeLong(readOffset);
+            out.writeLong(readSegment ^ readOffset);
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!temporary.renameTo(new File(directory, POSITION_FILE))) {
+            throw new IOException("Cannot update spool position");
+        }
+    }
+
+    private File segmentFile(long segment) {
+        return new File(directory, String.format(Locale.US, "%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    record SpooledBatch(String macAddress, int sampleCount, byte[] body) {
+    }
+
+    private record RecordRead(SpooledBatch batch, long end) {
+    }
+}
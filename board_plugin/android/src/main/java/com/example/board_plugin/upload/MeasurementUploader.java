@@ -0,0 +1,251 @@
+package com.example.board_plugin.upload;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.board_plugin.connection.BackoffPolicy;
+import com.example.board_plugin.connection.BoardSessionRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+// Drains every board on a fixed interval and posts the samples to /api/measurements from its own
+// thread, so uploads carry on while the foreground service runs, with or without a Flutter engine.
+// Drained batches go to the MeasurementSpool on disk first and are sent from there in order, so
+// they survive the process being killed. Undelivered batches are retried with backoff, or after
+// the server's Retry-After if that is longer. Only a batch the server can never accept (400, 413,
+// 422) is dropped; an auth failure keeps it in the spool until the API key is fixed.
+public class MeasurementUploader {
+
+    public static final String CONSUMER = "upload";
+    private static final String TAG = "MeasurementUploader";
+    private static final String MEASUREMENTS_PATH = "/api/measurements";
+    private static final String SPOOL_DIRECTORY = "measurement_spool";
+    private static final BackoffPolicy RETRY_POLICY =
+            new BackoffPolicy(2000, 5 * 60 * 1000, 2.0, 0.5, Integer.MAX_VALUE);
+
+    private static MeasurementUploader shared;
+
+    private final Context context;
+    private final BoardSessionRegistry sessions;
+    private final HttpTransport transport;
+    private final Random random = new Random();
+    private final Object spoolLock = new Object();
+    private final Runnable tick = this::tick;
+
+    private volatile UploadConfig config;
+    private HandlerThread thread;
+    private Handler handler;
+    private MeasurementSpool spool;
+    private int failedAttempts = 0;
+    private long retryAfterMs = 0;
+    private boolean compressionAccepted = true;
+
+    public MeasurementUploader(Context context, BoardSessionRegistry sessions, HttpTransport transport) {
+        this(context.getApplicationContext(), sessions, transport,
+                UploadConfig.load(context.getApplicationContext()), null);
+    }
+
+    // Tests hand in the configuration and an open spool, so no Context is needed to deliver.
+    MeasurementUploader(Context context, BoardSessionRegistry sessions, HttpTransport transport,
+                        UploadConfig config, MeasurementSpool spool) {
+        this.context = context;
+        this.sessions = sessions;
+        this.transport = transport;
+        this.config = config;
+        this.spool = spool;
+    }
+
+    public static synchronized MeasurementUploader shared(Context context) {
+        if (shared == null) {
+            shared = new MeasurementUploader(context, BoardSessionRegistry.shared(context), new UrlConnectionTransport());
+        }
+        return shared;
+    }
+
+    // Stored for the next service start; applied now if the foreground service is running.
+    public synchronized void configure(UploadConfig config) {
+        config.save(context);
+        this.config = config;
+        compressionAccepted = true;
+        Log.i(TAG, "Upload " + (config.isUsable() ? "enabled every " + config.intervalMs() + " ms" : "disabled"));
+
+        if (!config.isUsable()) {
+            stop();
+        } else if (thread != null) {
+            handler.removeCallbacks(tick);
+            handler.postDelayed(tick, config.intervalMs());
+        } else if (sessions.isRetainedByService()) {
+            start();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    public synchronized void start() {
+        if (thread != null || !config.isUsable()) {
+            return;
+        }
+        Log.i(TAG, "Starting uploads to " + config.baseUrl());
+        sessions.registerConsumer(CONSUMER);
+        thread = new HandlerThread(TAG);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        // Straight away, so batches spooled before a restart do not wait a whole interval.
+        handler.post(tick);
+    }
+
+    // Takes one last batch and gives it a single attempt before the thread goes away.
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        Log.i(TAG, "Stopping uploads");
+        handler.removeCallbacks(tick);
+        handler.post(() -> {
+            synchronized (spoolLock) {
+                collect();
+                deliver();
+            }
+            synchronized (this) {
+                if (thread == null) {
+                    sessions.unregisterConsumer(CONSUMER);
+                }
+            }
+        });
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+    }
+
+    private void tick() {
+        boolean delivered;
+        synchronized (spoolLock) {
+            collect();
+            delivered = deliver();
+        }
+        long delay = delivered ? config.intervalMs() : retryDelayMs();
+        synchronized (this) {
+            // A stop, or a stop and restart, may have happened while this batch was being sent.
+            if (handler != null && handler.getLooper() == Looper.myLooper()) {
+                handler.postDelayed(tick, delay);
+            }
+        }
+    }
+
+    long retryDelayMs() {
+        return Math.max(retryAfterMs, RETRY_POLICY.delayFor(failedAttempts, random));
+    }
+
+    private MeasurementSpool spool() {
+        if (spool == null) {
+            try {
+                spool = MeasurementSpool.open(new File(context.getNoBackupFilesDir(), SPOOL_DIRECTORY));
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot open measurement spool", e);
+            }
+        }
+        return spool;
+    }
+
+    private void collect() {
+        var spool = spool();
+        if (spool == null) {
+            return;
+        }
+        try {
+            for (var entry : sessions.drainAll(CONSUMER).entrySet()) {
+                var snapshot = entry.getValue();
+                if (!snapshot.isEmpty()) {
+                    spool.append(entry.getKey(), snapshot.sampleCount(),
+                            MeasurementPayload.encode(entry.getKey(), snapshot));
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing batch to the spool", e);
+        } finally {
+            try {
+                spool.sync();
+            } catch (IOException e) {
+                Log.e(TAG, "Error syncing the spool", e);
+            }
+        }
+    }
+
+    // Sends in order and stops at the first batch that should be retried. A batch leaves the
+    // spool only once the server has answered for it.
+    boolean deliver() {
+        var spool = spool();
+        if (spool == null) {
+            return true;
+        }
+        try {
+            retryAfterMs = 0;
+            MeasurementSpool.SpooledBatch batch;
+            while ((batch = spool.peek()) != null) {
+                var response = post(batch.body());
+                int status = response.status();
+                if (status >= 200 && status < 300) {
+                    Log.d(TAG, "Uploaded " + batch.sampleCount() + " samples from " + batch.macAddress());
+                    spool.acknowledge();
+                    failedAttempts = 0;
+                } else if (status == 400 || status == 413 || status == 422) {
+                    Log.w(TAG, "Server rejected batch with " + status + ", dropping it");
+                    spool.acknowledge();
+                } else {
+                    failedAttempts++;
+                    retryAfterMs = response.retryAfterMs();
+                    if (status == 401 || status == 403) {
+                        Log.w(TAG, "Upload not authorized (" + status + "), keeping batches in the spool");
+                    } else {
+                        Log.w(TAG, "Server answered " + status + ", keeping batches in the spool");
+                    }
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            failedAttempts++;
+            Log.w(TAG, "Upload failed (" + e.getMessage() + "), keeping batches in the spool");
+            return false;
+        }
+    }
+
+    private HttpTransport.Response post(byte[] body) throws IOException {
+        var config = this.config;
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("X-Api-Key", config.apiKey());
+
+        if (config.compress() && compressionAccepted) {
+            headers.put("Content-Encoding", "gzip");
+            var response = transport.post(config.baseUrl() + MEASUREMENTS_PATH, gzip(body), headers);
+            if (response.status() != 415) {
+                return response;
+            }
+            // Servers that do not take compressed bodies get plain JSON from now on.
+            Log.w(TAG, "Server does not accept gzip bodies, sending uncompressed");
+            compressionAccepted = false;
+            headers.remove("Content-Encoding");
+        }
+        return transport.post(config.baseUrl() + MEASUREMENTS_PATH, body, headers);
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        var bytes = new ByteArrayOutputStream(body.length / 4);
+        try (var out = new GZIPOutputStream(bytes)) {
+            out.write(body);
+        }
+        return bytes.toByteArray();
+    }
+}
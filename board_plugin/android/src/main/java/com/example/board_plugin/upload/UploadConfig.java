@@ -0,0 +1,70 @@
+package com.example.board_plugin.upload;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Map;
+
+// Kept in SharedPreferences so a foreground service restarted by the system uploads with the
+// settings it was last given, before any Flutter engine is around to send them again.
+public record UploadConfig(boolean enabled, String baseUrl, String apiKey, long intervalMs,
+                           boolean compress) {
+
+    public static final UploadConfig DISABLED = new UploadConfig(false, "", "", 10000, true);
+
+    private static final String PREFERENCES = "board_upload_config";
+    private static final String KEY_ENABLED = "enabled";
+    private static final String KEY_BASE_URL = "baseUrl";
+    private static final String KEY_API_KEY = "apiKey";
+    private static final String KEY_INTERVAL_MS = "intervalMs";
+    private static final String KEY_COMPRESS = "compress";
+
+    public UploadConfig {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("Upload interval must be positive: " + intervalMs);
+        }
+    }
+
+    public static UploadConfig fromArguments(Map<?, ?> arguments) {
+        if (arguments == null) {
+            return DISABLED;
+        }
+
+        return new UploadConfig(
+                arguments.get(KEY_ENABLED) instanceof Boolean enabled ? enabled : DISABLED.enabled(),
+                arguments.get(KEY_BASE_URL) instanceof String baseUrl ? baseUrl : DISABLED.baseUrl(),
+                arguments.get(KEY_API_KEY) instanceof String apiKey ? apiKey : DISABLED.apiKey(),
+                arguments.get(KEY_INTERVAL_MS) instanceof Number interval ? interval.longValue() : DISABLED.intervalMs(),
+                arguments.get(KEY_COMPRESS) instanceof Boolean compress ? compress : DISABLED.compress()
+        );
+    }
+
+    public static UploadConfig load(Context context) {
+        var preferences = preferences(context);
+        return new UploadConfig(
+                preferences.getBoolean(KEY_ENABLED, DISABLED.enabled()),
+                preferences.getString(KEY_BASE_URL, DISABLED.baseUrl()),
+                preferences.getString(KEY_API_KEY, DISABLED.apiKey()),
+                preferences.getLong(KEY_INTERVAL_MS, DISABLED.intervalMs()),
+                preferences.getBoolean(KEY_COMPRESS, DISABLED.compress())
+        );
+    }
+
+    public void save(Context context) {
+        preferences(context).edit()
+                .putBoolean(KEY_ENABLED, enabled)
+                .putString(KEY_BASE_URL, baseUrl)
+                .putString(KEY_API_KEY, apiKey)
+                .putLong(KEY_INTERVAL_MS, intervalMs)
+                .putBoolean(KEY_COMPRESS, compress)
+                .apply();
+    }
+
+    public boolean isUsable() {
+        return enabled && !baseUrl.isEmpty();
+    }
+
+    private static SharedPreferences preferences(Context context) {
+        return context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+}
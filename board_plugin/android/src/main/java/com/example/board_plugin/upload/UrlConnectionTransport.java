@@ -0,0 +1,61 @@
+package com.example.board_plugin.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+public class UrlConnectionTransport implements HttpTransport {
+
+    private static final int TIMEOUT_MS = 10000;
+
+    @Override
+    public Response post(String url, byte[] body, Map<String, String> headers) throws IOException {
+        var connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            headers.forEach(connection::setRequestProperty);
+
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+
+            // Reading the response to the end and closing the stream, without disconnect(), lets
+            // the socket go back to the keep-alive pool for the next batch.
+            try (InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+                if (in != null) {
+                    byte[] buffer = new byte[1024];
+                    while (in.read(buffer) != -1) {
+                        // discard
+                    }
+                }
+            }
+            return new Response(status, retryAfterMs(connection));
+        } catch (IOException e) {
+            // A failed exchange leaves the socket in an unknown state, so it is not reused.
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date.
+    private static long retryAfterMs(HttpURLConnection connection) {
+        var value = connection.getHeaderField("Retry-After");
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            long date = connection.getHeaderFieldDate("Retry-After", 0);
+            return date > 0 ? Math.max(0, date - System.currentTimeMillis()) : 0;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.board_plugin.connection;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.board_plugin.measurement.MeasurementHandler;
+import com.example.board_plugin.measurement.MeasurementType;
+import com.example.board_plugin.measurement.OverflowPolicy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BoardSessionRegistryTest {
+
+    private static final String CONSUMER = "test";
+
+    private final AtomicLong nanos = new AtomicLong();
+    private MeasurementHandler left;
+    private MeasurementHandler right;
+
+    @Before
+    public void setUp() {
+        left = handler();
+        right = handler();
+    }
+
+    private MeasurementHandler handler() {
+        var handler = new MeasurementHandler(1024, OverflowPolicy.DROP_OLDEST, nanos::get);
+        handler.registerConsumer(CONSUMER);
+        handler.resetStreams(EnumSet.of(MeasurementType.ACCELERATION, MeasurementType.ANGULAR_VELOCITY));
+        return handler;
+    }
+
+    private static void record(MeasurementHandler handler, MeasurementType type, long fromMillis, long toMillis) {
+        for (long t = fromMillis; t <= toMillis; t += 10) {
+            handler.record(type, 0f, 0f, 1f, t);
+        }
+    }
+
+    @Test
+    public void alignsOnTheBoardThatIsBehind() {
+        record(left, MeasurementType.ACCELERATION, 0, 500);
+        record(right, MeasurementType.ACCELERATION, 0, 300);
+
+        assertEquals(300, BoardSessionRegistry.cutOff(List.of(left, right)));
+    }
+
+    @Test
+    public void singleBoardIsNotHeldBack() {
+        record(left, MeasurementType.ACCELERATION, 0, 500);
+
+        assertEquals(Long.MAX_VALUE, BoardSessionRegistry.cutOff(List.of(left, right)));
+    }
+
+    @Test
+    public void quietStreamStopsHoldingBackTheCutOff() {
+        record(left, MeasurementType.ACCELERATION, 0, 100);
+        record(left, MeasurementType.ANGULAR_VELOCITY, 0, 100);
+        record(right, MeasurementType.ACCELERATION, 0, 100);
+        assertEquals(100, BoardSessionRegistry.cutOff(List.of(left, right)));
+
+        // The left gyro stalls while everything else keeps streaming.
+        nanos.addAndGet(MeasurementHandler.QUIET_STREAM_TIMEOUT_NANOS / 2);
+        record(left, MeasurementType.ACCELERATION, 110, 5000);
+        record(right, MeasurementType.ACCELERATION, 110, 4000);
+        assertEquals(100, BoardSessionRegistry.cutOff(List.of(left, right)));
+
+        nanos.addAndGet(MeasurementHandler.QUIET_STREAM_TIMEOUT_NANOS / 2 + 1);
+        assertEquals(4000, BoardSessionRegistry.cutOff(List.of(left, right)));
+        assertEquals(401, left.drain(CONSUMER, 4000).batch(MeasurementType.ACCELERATION).size());
+    }
+
+    @Test
+    public void silentBoardDropsOutOfTheCutOff() {
+        record(left, MeasurementType.ACCELERATION, 0, 100);
+        record(right, MeasurementType.ACCELERATION, 0, 100);
+
+        nanos.addAndGet(MeasurementHandler.QUIET_STREAM_TIMEOUT_NANOS + 1);
+        record(left, MeasurementType.ACCELERATION, 110, 2000);
+
+        assertEquals(Long.MAX_VALUE, BoardSessionRegistry.cutOff(List.of(left, right)));
+    }
+
+    @Test
+    public void reconfiguringForgetsStreamsThatAreNoLongerActive() {
+        record(left, MeasurementType.ACCELERATION, 0, 100);
+        record(right, MeasurementType.ACCELERATION, 0, 1000);
+
+        // The left board switches to sensor fusion; its old accelerometer timestamp must not pin
+        // the cut-off at 100.
+        left.resetStreams(EnumSet.of(MeasurementType.QUATERNION));
+        record(left, MeasurementType.QUATERNION, 200, 800);
+
+        assertEquals(800, BoardSessionRegistry.cutOff(List.of(left, right)));
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.board_plugin.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ConnectionStateMachineTest {
+
+    // No jitter, so the delays are exactly 100, 200, 400 ms.
+    private static final BackoffPolicy POLICY = new BackoffPolicy(100, 1000, 2.0, 0.0, 3);
+
+    private FakeBoard board;
+    private ManualScheduler scheduler;
+    private ConnectionStateMachine machine;
+
+    @Before
+    public void setUp() {
+        board = new FakeBoard();
+        scheduler = new ManualScheduler();
+        machine = new ConnectionStateMachine(board, scheduler, POLICY, new Random(42));
+        board.machine = machine;
+    }
+
+    @Test
+    public void connectsThroughToStreaming() {
+        machine.start();
+        assertEquals(ConnectionState.BINDING, machine.state());
+        assertEquals(1, board.bindCalls);
+
+        machine.onServiceBound();
+        assertEquals(ConnectionState.CONNECTING, machine.state());
+        int attemptId = board.lastConnect();
+
+        machine.onBoardConnected(attemptId);
+        assertEquals(ConnectionState.CONFIGURING, machine.state());
+        assertEquals(List.of(attemptId), board.configures);
+
+        machine.onConfigured(attemptId);
+        assertEquals(ConnectionState.STREAMING, machine.state());
+        assertEquals(List.of(
+                ConnectionState.BINDING,
+                ConnectionState.CONNECTING,
+                ConnectionState.CONFIGURING,
+                ConnectionState.STREAMING), board.states);
+    }
+
+    @Test
+    public void retriesWithBackoffAndGivesUp() {
+        machine.onServiceBound();
+        machine.start();
+
+        for (long expectedDelay : new long[]{100, 200, 400}) {
+            machine.onFailure(board.lastConnect(), "connect failed");
+            assertEquals(ConnectionState.BACKOFF, machine.state());
+            assertEquals(expectedDelay, scheduler.delayMs);
+
+            scheduler.runPending();
+            assertEquals(ConnectionState.CONNECTING, machine.state());
+        }
+        assertEquals(4, board.connects.size());
+
+        machine.onFailure(board.lastConnect(), "connect failed");
+        assertEquals(ConnectionState.IDLE, machine.state());
+        assertNull(scheduler.pending);
+    }
+
+    @Test
+    public void successResetsBackoff() {
+        machine.onServiceBound();
+        machine.start();
+        machine.onFailure(board.lastConnect(), "connect failed");
+        scheduler.runPending();
+
+        int attemptId = board.lastConnect();
+        machine.onBoardConnected(attemptId);
+        machine.onConfigured(attemptId);
+        assertEquals(ConnectionState.STREAMING, machine.state());
+
+        machine.onFailure(attemptId, "link lost");
+        assertEquals(100, scheduler.delayMs);
+    }
+
+    @Test
+    public void failedConfigurationBacksOffInsteadOfStreaming() {
+        machine.onServiceBound();
+        machine.start();
+        int attemptId = board.lastConnect();
+        machine.onBoardConnected(attemptId);
+
+        machine.onFailure(attemptId, "Sensor setup failed");
+        assertEquals(ConnectionState.BACKOFF, machine.state());
+        assertEquals(100, scheduler.delayMs);
+
+        machine.onConfigured(attemptId);
+        assertEquals(ConnectionState.BACKOFF, machine.state());
+        scheduler.runPending();
+        assertEquals(ConnectionState.CONNECTING, machine.state());
+    }
+
+    @Test
+    public void ignoresCallbacksFromAbandonedAttempt() {
+        machine.onServiceBound();
+        machine.start();
+        int stale = board.lastConnect();
+        machine.onFailure(stale, "connect timed out");
+        scheduler.runPending();
+        int current = board.lastConnect();
+
+        // The first connectAsync() finally completes, then fails late.
+        machine.onBoardConnected(stale);
+        machine.onFailure(stale, "connect failed");
+        assertEquals(ConnectionState.CONNECTING, machine.state());
+        assertTrue(board.configures.isEmpty());
+
+        machine.onBoardConnected(current);
+        machine.onConfigured(stale);
+        assertEquals(ConnectionState.CONFIGURING, machine.state());
+
+        machine.onConfigured(current);
+        assertEquals(ConnectionState.STREAMING, machine.state());
+    }
+
+    @Test
+    public void shutdownDuringBackoffCancelsReconnect() {
+        machine.onServiceBound();
+        machine.start();
+        int attemptId = board.lastConnect();
+        machine.onBoardConnected(attemptId);
+        machine.onConfigured(attemptId);
+        machine.onFailure(attemptId, "link lost");
+        assertEquals(ConnectionState.BACKOFF, machine.state());
+
+        machine.shutdown();
+        assertEquals(ConnectionState.SHUTDOWN, machine.state());
+        assertNull(scheduler.pending);
+        assertEquals(1, board.connects.size());
+    }
+
+    @Test
+    public void shutdownDuringReconnectIgnoresItsCompletion() {
+        machine.onServiceBound();
+        machine.start();
+        machine.onFailure(board.lastConnect(), "connect failed");
+        scheduler.runPending();
+        int reconnect = board.lastConnect();
+
+        machine.shutdown();
+        machine.onBoardConnected(reconnect);
+        machine.onFailure(reconnect, "connect failed");
+
+        assertEquals(ConnectionState.SHUTDOWN, machine.state());
+        assertTrue(board.configures.isEmpty());
+        assertNull(scheduler.pending);
+    }
+
+    @Test
+    public void actionsMayCallBackIntoTheMachine() {
+        board.connectImmediately = true;
+        machine.onServiceBound();
+        machine.start();
+
+        assertEquals(ConnectionState.CONFIGURING, machine.state());
+        assertEquals(List.of(board.lastConnect()), board.configures);
+        // onStateChanged still sees the transitions in order.
+        assertEquals(List.of(ConnectionState.CONNECTING, ConnectionState.CONFIGURING), board.states);
+    }
+
+    private static class FakeBoard implements ConnectionStateMachine.Actions {
+        ConnectionStateMachine machine;
+        boolean connectImmediately;
+        int bindCalls;
+        final List<Integer> connects = new ArrayList<>();
+        final List<Integer> configures = new ArrayList<>();
+        final List<ConnectionState> states = new ArrayList<>();
+
+        int lastConnect() {
+            return connects.get(connects.size() - 1);
+        }
+
+        @Override
+        public void bindService() {
+            bindCalls++;
+        }
+
+        @Override
+        public void connectBoard(int attemptId) {
+            // Actions run outside the monitor, so a callback from another thread cannot block on it.
+            assertFalse(Thread.holdsLock(machine));
+            connects.add(attemptId);
+            if (connectImmediately) {
+                machine.onBoardConnected(attemptId);
+            }
+        }
+
+        @Override
+        public void configureBoard(int attemptId) {
+            assertFalse(Thread.holdsLock(machine));
+            configures.add(attemptId);
+        }
+
+        @Override
+        public void onStateChanged(ConnectionState previous, ConnectionState next, String reason) {
+            states.add(next);
+        }
+    }
+
+    private static class ManualScheduler implements ConnectionStateMachine.Scheduler {
+        Runnable pending;
+        long delayMs;
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            this.pending = task;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public void cancel() {
+            pending = null;
+        }
+
+        void runPending() {
+            var task = pending;
+            pending = null;
+            task.run();
+        }
+    }
+}
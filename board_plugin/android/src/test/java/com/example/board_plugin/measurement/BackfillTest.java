@@ -0,0 +1,102 @@
+package com.example.board_plugin.measurement;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class BackfillTest {
+
+    private static final String CONSUMER = "test";
+
+    private final List<Long> replayed = new ArrayList<>();
+    private final Backfill.SampleSink sink = (type, x, y, z, w, timestamp) -> replayed.add(timestamp);
+
+    private static Backfill backfill(long gapStart, int maxStagedLive) {
+        return new Backfill(Map.of(MeasurementType.ACCELERATION, gapStart), maxStagedLive);
+    }
+
+    private static void stageLogged(Backfill backfill, long... timestamps) {
+        for (long timestamp : timestamps) {
+            backfill.stageLogged(MeasurementType.ACCELERATION, 0f, 0f, 1f, 0f, timestamp);
+        }
+    }
+
+    private static void stageLive(Backfill backfill, long... timestamps) {
+        for (long timestamp : timestamps) {
+            assertTrue(backfill.stageLive(MeasurementType.ACCELERATION, 0f, 0f, 1f, 0f, timestamp));
+        }
+    }
+
+    @Test
+    public void fillsOnlyTheGapBetweenStreamedSamples() {
+        var backfill = backfill(100, 64);
+        // The logger also holds what was streamed before the drop and after the reconnect.
+        stageLogged(backfill, 80, 90, 100, 130, 110, 120, 120, 140, 150, 160);
+        stageLive(backfill, 150, 160, 170);
+
+        assertEquals(4, backfill.replay(sink));
+        assertEquals(List.of(110L, 120L, 130L, 140L, 150L, 160L, 170L), replayed);
+    }
+
+    @Test
+    public void withoutLiveSamplesTheWholeLogAfterTheGapIsKept() {
+        var backfill = backfill(100, 64);
+        stageLogged(backfill, 100, 110, 120);
+
+        assertEquals(2, backfill.replay(sink));
+        assertEquals(List.of(110L, 120L), replayed);
+    }
+
+    @Test
+    public void liveStagingIsBounded() {
+        var backfill = backfill(100, 3);
+        stageLive(backfill, 200, 210, 220);
+
+        assertFalse(backfill.stageLive(MeasurementType.ACCELERATION, 0f, 0f, 1f, 0f, 230));
+        // Other types have their own limit.
+        assertTrue(backfill.stageLive(MeasurementType.ANGULAR_VELOCITY, 0f, 0f, 1f, 0f, 230));
+    }
+
+    @Test
+    public void replaysOnlyOnce() {
+        var backfill = backfill(100, 64);
+        stageLogged(backfill, 110);
+        stageLive(backfill, 120);
+        backfill.replay(sink);
+
+        // A download that finishes after the backfill was cut short changes nothing.
+        stageLogged(backfill, 115);
+        assertEquals(0, backfill.replay(sink));
+        assertEquals(List.of(110L, 120L), replayed);
+    }
+
+    @Test
+    public void fullStagingFlushesLiveSamplesAndAbandonsTheBackfill() {
+        int limit = MeasurementHandler.MAX_STAGED_LIVE_SAMPLES;
+        var handler = new MeasurementHandler(limit * 2, OverflowPolicy.DROP_OLDEST);
+        handler.registerConsumer(CONSUMER);
+        handler.record(MeasurementType.ACCELERATION, 0f, 0f, 1f, 0);
+        handler.drain(CONSUMER);
+
+        handler.beginBackfill();
+        for (long t = 1; t <= limit; t++) {
+            handler.record(MeasurementType.ACCELERATION, 0f, 0f, 1f, t);
+        }
+        assertTrue(handler.drain(CONSUMER).batch(MeasurementType.ACCELERATION).isEmpty());
+
+        // One more sample than can be staged lets everything through, in order.
+        handler.record(MeasurementType.ACCELERATION, 0f, 0f, 1f, limit + 1);
+        handler.record(MeasurementType.ACCELERATION, 0f, 0f, 1f, limit + 2);
+        var batch = handler.drain(CONSUMER).batch(MeasurementType.ACCELERATION);
+        assertEquals(limit + 2, batch.size());
+        assertArrayEquals(new long[]{1, limit + 2},
+                new long[]{batch.timestamp(0), batch.timestamp(batch.size() - 1)});
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.board_plugin.measurement;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DecimatorTest {
+
+    // 100 Hz in, factor 4: one output per 40 ms window.
+    private static final float INPUT_HZ = 100f;
+    private static final int FACTOR = 4;
+
+    private SampleRingBuffer output;
+    private ConsumerCursor cursor;
+
+    @Before
+    public void setUp() {
+        output = new SampleRingBuffer(1024, 3, OverflowPolicy.DROP_OLDEST);
+        cursor = output.register("test");
+    }
+
+    private static Decimator decimator(DecimationMode mode) {
+        return new Decimator(new DecimationConfig(mode, FACTOR), INPUT_HZ);
+    }
+
+    private void feed(Decimator decimator, long fromMillis, long toMillis) {
+        for (long t = fromMillis; t <= toMillis; t += 10) {
+            decimator.process(t, 0f, 1f, t, output);
+        }
+    }
+
+    private static long[] timestamps(SampleBatch batch) {
+        long[] timestamps = new long[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            timestamps[i] = batch.timestamp(i);
+        }
+        return timestamps;
+    }
+
+    @Test
+    public void noneKeepsEverySample() {
+        feed(decimator(DecimationMode.NONE), 0, 390);
+
+        assertEquals(40, output.drain(cursor).size());
+    }
+
+    @Test
+    public void keepEveryNthKeepsTheFirstSampleOfEachWindow() {
+        feed(decimator(DecimationMode.KEEP_EVERY_NTH), 0, 390);
+
+        assertArrayEquals(new long[]{0, 40, 80, 120, 160, 200, 240, 280, 320, 360}, timestamps(output.drain(cursor)));
+    }
+
+    @Test
+    public void keepEveryNthStaysInPhaseAcrossLostSamples() {
+        var decimator = decimator(DecimationMode.KEEP_EVERY_NTH);
+        // Two samples lost in a dropped notification; counting samples would shift every later
+        // output by 20 ms.
+        feed(decimator, 0, 90);
+        feed(decimator, 120, 390);
+
+        assertArrayEquals(new long[]{0, 40, 80, 120, 160, 200, 240, 280, 320, 360}, timestamps(output.drain(cursor)));
+    }
+
+    @Test
+    public void burstyInputGivesOneSamplePerWindow() {
+        var decimator = decimator(DecimationMode.KEEP_EVERY_NTH);
+        int[] burstSizes = {1, 6, 2, 5, 3, 6, 1, 4};
+        for (int burst = 0; burst < burstSizes.length; burst++) {
+            long start = burst * 40L + (burst * 7) % 10;
+            for (int i = 0; i < burstSizes[burst]; i++) {
+                decimator.process(0f, 0f, 1f, start + 2L * i, output);
+            }
+        }
+
+        var batch = output.drain(cursor);
+        assertEquals(burstSizes.length, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(i, batch.timestamp(i) / 40);
+        }
+    }
+
+    @Test
+    public void blockAverageEmitsWindowMeansAtWindowCentres() {
+        // The last window goes out once a sample from the next one arrives.
+        feed(decimator(DecimationMode.BLOCK_AVERAGE), 0, 400);
+
+        var batch = output.drain(cursor);
+        assertArrayEquals(new long[]{20, 60, 100, 140, 180, 220, 260, 300, 340, 380}, timestamps(batch));
+        assertEquals(15f, batch.x(0), 1e-4f);
+        assertEquals(55f, batch.x(1), 1e-4f);
+    }
+
+    @Test
+    public void blockAverageOverBurstsAveragesWhatArrived() {
+        var decimator = decimator(DecimationMode.BLOCK_AVERAGE);
+        decimator.process(2f, 0f, 0f, 0, output);
+        decimator.process(4f, 0f, 0f, 1, output);
+        decimator.process(6f, 0f, 0f, 2, output);
+        // Nothing for two windows, then a burst that straddles a window boundary.
+        decimator.process(10f, 0f, 0f, 118, output);
+        decimator.process(20f, 0f, 0f, 119, output);
+        decimator.process(30f, 0f, 0f, 120, output);
+        decimator.process(0f, 0f, 0f, 160, output);
+
+        var batch = output.drain(cursor);
+        assertArrayEquals(new long[]{20, 100, 140}, timestamps(batch));
+        assertEquals(4f, batch.x(0), 1e-4f);
+        assertEquals(15f, batch.x(1), 1e-4f);
+        assertEquals(30f, batch.x(2), 1e-4f);
+    }
+
+    @Test
+    public void blockAverageKeepsQuaternionsUnitLength() {
+        var quaternions = new SampleRingBuffer(64, 4, OverflowPolicy.DROP_OLDEST);
+        var quaternionCursor = quaternions.register("test");
+        var decimator = decimator(DecimationMode.BLOCK_AVERAGE);
+        decimator.process(1f, 0f, 0f, 0f, 0, quaternions);
+        decimator.process(0f, 1f, 0f, 0f, 10, quaternions);
+        decimator.process(0f, 0f, 0f, 1f, 40, quaternions);
+
+        var batch = quaternions.drain(quaternionCursor);
+        assertEquals(1, batch.size());
+        float norm = (float) Math.sqrt(batch.x(0) * batch.x(0) + batch.y(0) * batch.y(0)
+                + batch.z(0) * batch.z(0) + batch.w(0) * batch.w(0));
+        assertEquals(1f, norm, 1e-5f);
+    }
+
+    @Test
+    public void lowPassSmoothsAStepAndDecimatesOnWindows() {
+        var decimator = decimator(DecimationMode.LOW_PASS);
+        for (long t = 0; t < 400; t += 10) {
+            decimator.process(t < 200 ? 0f : 1f, 0f, 0f, t, output);
+        }
+
+        var batch = output.drain(cursor);
+        assertArrayEquals(new long[]{0, 40, 80, 120, 160, 200, 240, 280, 320, 360}, timestamps(batch));
+        assertEquals(0f, batch.x(4), 1e-6f);
+        // The step reaches the output gradually, not in one jump.
+        assertTrue(batch.x(5) > 0f && batch.x(5) < 1f);
+        assertTrue(batch.x(9) > batch.x(6));
+    }
+
+    @Test
+    public void earlierTimestampStartsTheWindowsOver() {
+        var decimator = decimator(DecimationMode.KEEP_EVERY_NTH);
+        feed(decimator, 1000, 1070);
+        // A reconnect restarts the board's clock.
+        feed(decimator, 5, 85);
+
+        assertArrayEquals(new long[]{1000, 1040, 5, 45, 85}, timestamps(output.drain(cursor)));
+    }
+
+    @Test
+    public void unknownRateFallsBackToSampleCounts() {
+        var decimator = new Decimator(new DecimationConfig(DecimationMode.KEEP_EVERY_NTH, FACTOR), 0f);
+        for (long t = 0; t < 12; t++) {
+            decimator.process(0f, 0f, 1f, t * 3, output);
+        }
+
+        assertArrayEquals(new long[]{0, 12, 24}, timestamps(output.drain(cursor)));
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.board_plugin.measurement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MeasurementHandlerTest {
+
+    private static final String ACCELERATION = MeasurementType.ACCELERATION.toString();
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private MeasurementHandler handler(int capacity, OverflowPolicy policy) {
+        return new MeasurementHandler(capacity, policy, nanos::get);
+    }
+
+    private static void record(MeasurementHandler handler, long from, long to) {
+        for (long t = from; t < to; t++) {
+            handler.record(MeasurementType.ACCELERATION, 0f, 0f, 1f, t);
+        }
+    }
+
+    private static SampleBatch drain(MeasurementHandler handler, String consumer) {
+        return handler.drain(consumer).batch(MeasurementType.ACCELERATION);
+    }
+
+    @Test
+    public void consumersDrainingAtDifferentRatesEachGetEverySample() {
+        var handler = handler(256, OverflowPolicy.DROP_OLDEST);
+        handler.registerConsumer("fast");
+        handler.registerConsumer("slow");
+
+        long fastNext = 0;
+        long slowNext = 0;
+        for (long t = 0; t < 1000; t += 10) {
+            record(handler, t, t + 10);
+            var fast = drain(handler, "fast");
+            assertEquals(fastNext, fast.timestamp(0));
+            fastNext += fast.size();
+            if (t % 100 == 90) {
+                var batch = drain(handler, "slow");
+                assertEquals(slowNext, batch.timestamp(0));
+                assertEquals(100, batch.size());
+                slowNext += batch.size();
+            }
+        }
+        assertEquals(1000, fastNext);
+        assertEquals(1000, slowNext);
+        assertFalse(handler.hasPendingSamples());
+    }
+
+    @Test
+    public void laggingConsumerLosesOnlyItsOwnOldestSamples() {
+        var handler = handler(64, OverflowPolicy.DROP_OLDEST);
+        handler.registerConsumer("fast");
+        handler.registerConsumer("slow");
+
+        for (long t = 0; t < 200; t += 20) {
+            record(handler, t, t + 20);
+            assertEquals(20, drain(handler, "fast").size());
+        }
+
+        var slow = drain(handler, "slow");
+        assertEquals(64, slow.size());
+        assertEquals(136, slow.timestamp(0));
+        assertEquals(136L, (long) handler.getConsumerOverflowCounts("slow").get(ACCELERATION));
+        assertEquals(0L, (long) handler.getConsumerOverflowCounts("fast").get(ACCELERATION));
+    }
+
+    @Test
+    public void pollerThatStopsDrainingIsDropped() {
+        var handler = handler(64, OverflowPolicy.DROP_OLDEST);
+        handler.registerConsumer("upload");
+        drain(handler, "poller");
+        record(handler, 0, 10);
+        drain(handler, "upload");
+        assertTrue(handler.hasPendingSamples());
+
+        nanos.addAndGet(MeasurementHandler.IDLE_CONSUMER_TIMEOUT_NANOS + 1);
+        assertFalse(handler.hasPendingSamples());
+        assertFalse(handler.getConsumerLags().containsKey("poller"));
+        assertTrue(handler.getConsumerLags().containsKey("upload"));
+    }
+
+    @Test
+    public void drainingKeepsAPollerAlive() {
+        var handler = handler(64, OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 3; i++) {
+            drain(handler, "poller");
+            nanos.addAndGet(MeasurementHandler.IDLE_CONSUMER_TIMEOUT_NANOS / 2);
+        }
+        record(handler, 0, 10);
+
+        assertTrue(handler.hasPendingSamples());
+        assertEquals(10, drain(handler, "poller").size());
+    }
+
+    @Test
+    public void registeredConsumersNeverExpire() {
+        var handler = handler(64, OverflowPolicy.DROP_OLDEST);
+        handler.registerConsumer("stream");
+        record(handler, 0, 10);
+
+        nanos.addAndGet(MeasurementHandler.IDLE_CONSUMER_TIMEOUT_NANOS * 10);
+        assertTrue(handler.hasPendingSamples());
+        assertEquals(10, drain(handler, "stream").size());
+    }
+
+    @Test
+    public void expiredPollerStopsDropNewestFromRejectingSamples() {
+        var handler = handler(16, OverflowPolicy.DROP_NEWEST);
+        drain(handler, "poller");
+        record(handler, 0, 20);
+        assertEquals(4L, (long) handler.getOverflowCounts().get(ACCELERATION));
+
+        // The service's periodic pending check notices the poller is gone.
+        nanos.addAndGet(MeasurementHandler.IDLE_CONSUMER_TIMEOUT_NANOS + 1);
+        handler.hasPendingSamples();
+        record(handler, 20, 40);
+        assertEquals(4L, (long) handler.getOverflowCounts().get(ACCELERATION));
+
+        // A poller that comes back picks up the newest samples the ring kept meanwhile.
+        var batch = drain(handler, "poller");
+        assertEquals(16, batch.size());
+        assertEquals(39, batch.timestamp(batch.size() - 1));
+    }
+}
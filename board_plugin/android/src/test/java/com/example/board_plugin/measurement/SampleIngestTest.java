@@ -0,0 +1,113 @@
+package com.example.board_plugin.measurement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class SampleIngestTest {
+
+    @Test
+    public void fullQueueDropsAndCountsIncomingSamples() {
+        var queue = new SpscSampleQueue(4);
+        for (long t = 0; t < 4; t++) {
+            assertTrue(queue.offer(t, 0f, 0f, 0f, t));
+        }
+        assertFalse(queue.offer(4f, 0f, 0f, 0f, 4));
+        assertFalse(queue.offer(5f, 0f, 0f, 0f, 5));
+        assertEquals(2, queue.dropCount());
+        assertEquals(4, queue.depth());
+
+        List<Long> drained = new ArrayList<>();
+        assertEquals(4, queue.drainTo(MeasurementType.ACCELERATION, (type, x, y, z, w, t) -> drained.add(t)));
+        assertEquals(List.of(0L, 1L, 2L, 3L), drained);
+        assertEquals(4, queue.maxDepth());
+        assertTrue(queue.offer(6f, 0f, 0f, 0f, 6));
+        assertEquals(2, queue.dropCount());
+    }
+
+    @Test
+    public void fullIngestQueueCountsDropsPerType() throws InterruptedException {
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var ingest = new SampleIngest(4, (type, x, y, z, w, t) -> {
+            entered.countDown();
+            awaitQuietly(release);
+        });
+        // The first sample blocks the ingest thread in the sink, so the queue behind it fills up.
+        // Its slot is only given back once the sink returns.
+        ingest.offer(MeasurementType.ACCELERATION, 0f, 0f, 0f, 0f, 0);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        for (long t = 1; t <= 10; t++) {
+            ingest.offer(MeasurementType.ACCELERATION, 0f, 0f, 0f, 0f, t);
+        }
+
+        assertEquals(7, ingest.dropCount(MeasurementType.ACCELERATION));
+        assertEquals(0, ingest.dropCount(MeasurementType.ANGULAR_VELOCITY));
+        release.countDown();
+    }
+
+    // Each sample is offered just as the ingest thread may be deciding to exit or park. A wake-up
+    // lost to that race leaves the sample in the queue and the wait below times out.
+    @Test
+    public void samplesOfferedWhileTheThreadExitsAreStillIngested() throws InterruptedException {
+        long idleTimeoutNanos = TimeUnit.MICROSECONDS.toNanos(50);
+        var ingested = new AtomicLong();
+        var ingest = new SampleIngest(16, (type, x, y, z, w, t) -> ingested.incrementAndGet(), idleTimeoutNanos);
+
+        for (int i = 1; i <= 2000; i++) {
+            ingest.offer(MeasurementType.ACCELERATION, 0f, 0f, 0f, 0f, i);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            while (ingested.get() < i) {
+                assertTrue("sample " + i + " was never ingested", System.nanoTime() < deadline);
+                Thread.yield();
+            }
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(2 * idleTimeoutNanos));
+        }
+    }
+
+    @Test
+    public void tasksRunAfterTheSamplesOfferedBeforeThem() throws InterruptedException {
+        List<Long> events = new ArrayList<>();
+        var ingest = new SampleIngest(1024, (type, x, y, z, w, t) -> events.add(t));
+        int rounds = 500;
+        for (long round = 0; round < rounds; round++) {
+            ingest.offer(MeasurementType.ACCELERATION, 0f, 0f, 0f, 0f, 2 * round);
+            long marker = -round - 1;
+            ingest.execute(() -> events.add(marker));
+            ingest.offer(MeasurementType.ACCELERATION, 0f, 0f, 0f, 0f, 2 * round + 1);
+        }
+        var done = new CountDownLatch(1);
+        ingest.execute(done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        // Samples stay in offer order, and each task comes after the sample offered before it.
+        long nextSample = 0;
+        for (long event : events) {
+            if (event >= 0) {
+                assertEquals(nextSample++, event);
+            } else {
+                long round = -event - 1;
+                assertTrue("task " + round + " ran before sample " + 2 * round, nextSample > 2 * round);
+            }
+        }
+        assertEquals(2L * rounds, nextSample);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
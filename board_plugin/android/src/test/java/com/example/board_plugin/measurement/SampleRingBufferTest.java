@@ -0,0 +1,124 @@
+package com.example.board_plugin.measurement;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SampleRingBufferTest {
+
+    private static void add(SampleRingBuffer ring, long... timestamps) {
+        for (long timestamp : timestamps) {
+            ring.add(timestamp, 0f, 0f, timestamp);
+        }
+    }
+
+    private static long[] timestamps(SampleBatch batch) {
+        long[] timestamps = new long[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            timestamps[i] = batch.timestamp(i);
+        }
+        return timestamps;
+    }
+
+    @Test
+    public void drainsAcrossTheWrapInOrder() {
+        var ring = new SampleRingBuffer(8, 3, OverflowPolicy.DROP_OLDEST);
+        var cursor = ring.register("test");
+        add(ring, 1, 2, 3, 4, 5, 6);
+        ring.drain(cursor);
+
+        add(ring, 7, 8, 9, 10, 11, 12);
+        var batch = ring.drain(cursor);
+        assertEquals(6, batch.firstSequence());
+        assertArrayEquals(new long[]{7, 8, 9, 10, 11, 12}, timestamps(batch));
+        assertEquals(11f, batch.x(4), 0f);
+        assertFalse(ring.hasPending());
+    }
+
+    @Test
+    public void dropOldestKeepsTheNewestSamples() {
+        var ring = new SampleRingBuffer(4, 3, OverflowPolicy.DROP_OLDEST);
+        var cursor = ring.register("test");
+        add(ring, 1, 2, 3, 4, 5, 6);
+
+        assertArrayEquals(new long[]{3, 4, 5, 6}, timestamps(ring.drain(cursor)));
+        assertEquals(2, cursor.overflowCount());
+        assertEquals(2, ring.overflowCount());
+    }
+
+    @Test
+    public void dropNewestKeepsTheBacklog() {
+        var ring = new SampleRingBuffer(4, 3, OverflowPolicy.DROP_NEWEST);
+        var cursor = ring.register("test");
+        add(ring, 1, 2, 3, 4);
+
+        assertFalse(ring.add(5f, 0f, 0f, 5));
+        assertArrayEquals(new long[]{1, 2, 3, 4}, timestamps(ring.drain(cursor)));
+        assertEquals(1, cursor.overflowCount());
+        assertTrue(ring.add(6f, 0f, 0f, 6));
+    }
+
+    @Test
+    public void dropNewestOnlyCostsTheLaggingConsumer() {
+        var ring = new SampleRingBuffer(4, 3, OverflowPolicy.DROP_NEWEST);
+        var fast = ring.register("fast");
+        var slow = ring.register("slow");
+        add(ring, 1, 2, 3, 4);
+        ring.drain(fast);
+
+        assertTrue(ring.add(5f, 0f, 0f, 5));
+        assertArrayEquals(new long[]{5}, timestamps(ring.drain(fast)));
+        assertArrayEquals(new long[]{2, 3, 4, 5}, timestamps(ring.drain(slow)));
+        assertEquals(0, fast.overflowCount());
+        assertEquals(1, slow.overflowCount());
+    }
+
+    @Test
+    public void cutOffTakesOnlyTheInOrderRun() {
+        var ring = new SampleRingBuffer(8, 3, OverflowPolicy.DROP_OLDEST);
+        var cursor = ring.register("test");
+        // A reconnect can leave a later sample stamped earlier than the one before it.
+        add(ring, 10, 40, 20, 30);
+
+        assertArrayEquals(new long[]{10}, timestamps(ring.drain(cursor, 25)));
+        assertArrayEquals(new long[]{40, 20, 30}, timestamps(ring.drain(cursor, 40)));
+    }
+
+    // The producer laps the consumer over and over. Each sample carries its own sequence number,
+    // so a copy torn by the producer, committed without the drain retrying, shows up as a gap.
+    @Test
+    public void drainRetriesWhenOverwrittenWhileCopying() throws InterruptedException {
+        var ring = new SampleRingBuffer(64, 3, OverflowPolicy.DROP_OLDEST);
+        var cursor = ring.register("test");
+        int samples = 2_000_000;
+        var producer = new Thread(() -> {
+            for (long sequence = 0; sequence < samples; sequence++) {
+                ring.add(sequence, 0f, 0f, sequence);
+            }
+        });
+        var failure = new AtomicReference<String>();
+        producer.start();
+
+        long drained = 0;
+        while (producer.isAlive() || ring.hasPending()) {
+            var batch = ring.drain(cursor);
+            for (int i = 0; i < batch.size(); i++) {
+                long expected = batch.firstSequence() + i;
+                if (batch.timestamp(i) != expected || batch.x(i) != (float) expected) {
+                    failure.compareAndSet(null, "slot " + expected + " held " + batch.timestamp(i));
+                }
+            }
+            drained += batch.size();
+        }
+        producer.join();
+
+        assertNull(failure.get());
+        assertEquals(samples, drained + cursor.overflowCount());
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.board_plugin.setup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.example.board_plugin.measurement.MeasurementType;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+public class SensorProfileTest {
+
+    private static SensorProfile withModules(String... modules) {
+        return SensorProfile.fromArguments(Map.of("modules", List.of(modules)));
+    }
+
+    @Test
+    public void rawModulesStreamRawTypes() {
+        assertEquals(EnumSet.of(MeasurementType.ACCELERATION, MeasurementType.ANGULAR_VELOCITY),
+                withModules("accelerometer", "gyroscope", "battery").streamedTypes());
+    }
+
+    @Test
+    public void fusionOutputsAreSelectedSeparately() {
+        var profile = withModules("accelerometer", "quaternion");
+
+        assertEquals(EnumSet.of(MeasurementType.QUATERNION), profile.streamedTypes());
+        // Fusion owns the accelerometer, so the raw stream is not set up next to it.
+        assertFalse(profile.useRawAccelerometer());
+        assertEquals(EnumSet.of(MeasurementType.LINEAR_ACCELERATION),
+                withModules("linearAcceleration").streamedTypes());
+    }
+
+    @Test
+    public void legacySensorFusionSelectsBothOutputs() {
+        assertEquals(EnumSet.of(MeasurementType.QUATERNION, MeasurementType.LINEAR_ACCELERATION),
+                withModules("sensorFusion").streamedTypes());
+    }
+}
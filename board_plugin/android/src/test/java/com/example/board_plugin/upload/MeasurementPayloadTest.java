@@ -0,0 +1,24 @@
+package com.example.board_plugin.upload;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class MeasurementPayloadTest {
+
+    private static String quoted(String value) {
+        var json = new StringBuilder();
+        MeasurementPayload.appendString(json, value);
+        return json.toString();
+    }
+
+    @Test
+    public void plainAddressIsQuoted() {
+        assertEquals("\"AA:BB:CC:DD:EE:FF\"", quoted("AA:BB:CC:DD:EE:FF"));
+    }
+
+    @Test
+    public void specialCharactersAreEscaped() {
+        assertEquals("\"a\\\"b\\\\c\\nd\\u0001\"", quoted("a\"b\\c\nd\u0001"));
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.board_plugin.upload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class MeasurementSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private MeasurementSpool spool;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("spool");
+        spool = MeasurementSpool.open(directory);
+    }
+
+    @After
+    public void tearDown() {
+        spool.close();
+    }
+
+    private void reopen() throws IOException {
+        spool.close();
+        spool = MeasurementSpool.open(directory);
+    }
+
+    private void append(int... indices) throws IOException {
+        for (int index : indices) {
+            spool.append("AA:BB", index, body(index));
+        }
+        spool.sync();
+    }
+
+    private static byte[] body(int index) {
+        return ("{\"batch\":" + index + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void assertNext(int index) throws IOException {
+        var batch = spool.peek();
+        assertEquals(index, batch.sampleCount());
+        assertArrayEquals(body(index), batch.body());
+        spool.acknowledge();
+    }
+
+    private File[] segmentFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("segment-"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    @Test
+    public void batchesSurviveAReopenInOrder() throws IOException {
+        append(0, 1, 2);
+        reopen();
+
+        assertNext(0);
+        assertNext(1);
+        assertNext(2);
+        assertNull(spool.peek());
+    }
+
+    @Test
+    public void deliveredBatchesAreNotSentAgain() throws IOException {
+        append(0, 1, 2);
+        assertNext(0);
+        reopen();
+
+        assertNext(1);
+        assertNext(2);
+        assertTrue(spool.isEmpty());
+    }
+
+    @Test
+    public void tornTailIsCutOff() throws IOException {
+        append(0, 1);
+        spool.close();
+        // A crash in the middle of the third record left only part of it on disk.
+        File segment = segmentFiles()[segmentFiles().length - 1];
+        long intact = segment.length();
+        try (var out = new FileOutputStream(segment, true)) {
+            out.write(new byte[]{0, 0, 0, 64, 1, 2, 3, 4, 5});
+        }
+
+        spool = MeasurementSpool.open(directory);
+        assertEquals(intact, segment.length());
+        append(2);
+        assertNext(0);
+        assertNext(1);
+        assertNext(2);
+        assertNull(spool.peek());
+    }
+
+    @Test
+    public void checksumMismatchEndsTheSegment() throws IOException {
+        append(0, 1);
+        spool.close();
+        File segment = segmentFiles()[segmentFiles().length - 1];
+        try (var file = new RandomAccessFile(segment, "rw")) {
+            // Flips the last byte of the second record's body.
+            file.seek(file.length() - 2);
+            int last = file.read();
+            file.seek(file.length() - 2);
+            file.write(last ^ 0xff);
+        }
+
+        spool = MeasurementSpool.open(directory);
+        append(2);
+        assertNext(0);
+        assertNext(2);
+        assertNull(spool.peek());
+    }
+
+    @Test
+    public void positionIsReplacedAtomically() throws IOException {
+        append(0, 1, 2);
+        assertNext(0);
+        spool.close();
+        // A crash between writing the temporary file and renaming it leaves this behind.
+        try (var out = new FileOutputStream(new File(directory, "position.tmp"))) {
+            out.write(new byte[]{1, 2, 3});
+        }
+
+        spool = MeasurementSpool.open(directory);
+        assertNext(1);
+        reopen();
+        assertNext(2);
+        assertTrue(spool.isEmpty());
+    }
+
+    @Test
+    public void damagedPositionSendsAgainRatherThanSkipping() throws IOException {
+        append(0, 1, 2);
+        assertNext(0);
+        assertNext(1);
+        spool.close();
+        try (var file = new RandomAccessFile(new File(directory, "position"), "rw")) {
+            file.setLength(12);
+        }
+
+        spool = MeasurementSpool.open(directory);
+        assertNext(0);
+        assertNext(1);
+        assertNext(2);
+    }
+
+    @Test
+    public void sizeCapDropsTheOldestSegments() throws IOException {
+        byte[] body = new byte[256 << 10];
+        int appended = (int) (MeasurementSpool.MAX_SPOOL_BYTES / body.length) + 16;
+        for (int i = 0; i < appended; i++) {
+            spool.append("AA:BB", i, body);
+        }
+        spool.sync();
+
+        long total = 0;
+        for (File segment : segmentFiles()) {
+            total += segment.length();
+        }
+        assertTrue("spool holds " + total + " bytes", total <= MeasurementSpool.MAX_SPOOL_BYTES);
+
+        // The newest batches are still there; the first ones went with their segments.
+        int first = spool.peek().sampleCount();
+        assertTrue("oldest kept batch " + first, first > 0);
+        int count = 0;
+        int last = -1;
+        MeasurementSpool.SpooledBatch batch;
+        while ((batch = spool.peek()) != null) {
+            assertEquals(first + count, batch.sampleCount());
+            last = batch.sampleCount();
+            spool.acknowledge();
+            count++;
+        }
+        assertEquals(appended - 1, last);
+    }
+}
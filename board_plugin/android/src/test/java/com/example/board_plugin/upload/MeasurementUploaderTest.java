@@ -0,0 +1,161 @@
+package com.example.board_plugin.upload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+public class MeasurementUploaderTest {
+
+    private static final UploadConfig CONFIG =
+            new UploadConfig(true, "https://example.test", "key", 10000, false);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeTransport transport;
+    private MeasurementSpool spool;
+
+    @Before
+    public void setUp() throws IOException {
+        transport = new FakeTransport();
+        spool = MeasurementSpool.open(folder.newFolder("spool"));
+    }
+
+    @After
+    public void tearDown() {
+        spool.close();
+    }
+
+    private MeasurementUploader uploader(UploadConfig config) {
+        return new MeasurementUploader(null, null, transport, config, spool);
+    }
+
+    private void spoolBatches(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            spool.append("AA:BB", 1, body(i));
+        }
+        spool.sync();
+    }
+
+    private static byte[] body(int index) {
+        return ("{\"batch\":" + index + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void successAdvancesTheSpool() throws IOException {
+        spoolBatches(2);
+        transport.answer(200, 0).answer(204, 0);
+
+        assertTrue(uploader(CONFIG).deliver());
+        assertTrue(spool.isEmpty());
+        assertEquals(2, transport.requests.size());
+        assertArrayEquals(body(1), transport.requests.get(1).body());
+    }
+
+    @Test
+    public void serverErrorBacksOffAndKeepsTheBatch() throws IOException {
+        spoolBatches(2);
+        var uploader = uploader(CONFIG);
+        transport.answer(503, 0);
+
+        assertFalse(uploader.deliver());
+        assertArrayEquals(body(0), spool.peek().body());
+        long delay = uploader.retryDelayMs();
+        assertTrue("delay " + delay, delay >= 1000 && delay <= 2000);
+
+        transport.answer(200, 0).answer(200, 0);
+        assertTrue(uploader.deliver());
+        assertTrue(spool.isEmpty());
+    }
+
+    @Test
+    public void tooManyRequestsWaitsForRetryAfter() throws IOException {
+        spoolBatches(1);
+        var uploader = uploader(CONFIG);
+        transport.answer(429, 600_000);
+
+        assertFalse(uploader.deliver());
+        assertArrayEquals(body(0), spool.peek().body());
+        // Longer than any backoff delay, so the server's wish wins.
+        assertEquals(600_000, uploader.retryDelayMs());
+    }
+
+    @Test
+    public void rejectedBatchesAreDropped() throws IOException {
+        spoolBatches(4);
+        transport.answer(400, 0).answer(413, 0).answer(422, 0).answer(200, 0);
+
+        assertTrue(uploader(CONFIG).deliver());
+        assertTrue(spool.isEmpty());
+        assertEquals(4, transport.requests.size());
+    }
+
+    @Test
+    public void authFailureKeepsTheBatch() throws IOException {
+        spoolBatches(2);
+        var uploader = uploader(CONFIG);
+
+        for (int status : new int[]{401, 403}) {
+            transport.answer(status, 0);
+            assertFalse(uploader.deliver());
+            assertArrayEquals(body(0), spool.peek().body());
+        }
+        assertEquals(2, transport.requests.size());
+    }
+
+    @Test
+    public void unsupportedMediaTypeFallsBackToPlainJson() throws IOException {
+        spoolBatches(2);
+        var uploader = uploader(new UploadConfig(true, "https://example.test", "key", 10000, true));
+        transport.answer(415, 0).answer(200, 0).answer(200, 0);
+
+        assertTrue(uploader.deliver());
+        assertTrue(spool.isEmpty());
+        assertEquals(3, transport.requests.size());
+        assertEquals("gzip", transport.requests.get(0).headers().get("Content-Encoding"));
+        // The same batch again, uncompressed, and every batch after it too.
+        assertNull(transport.requests.get(1).headers().get("Content-Encoding"));
+        assertArrayEquals(body(0), transport.requests.get(1).body());
+        assertNull(transport.requests.get(2).headers().get("Content-Encoding"));
+        assertArrayEquals(body(1), transport.requests.get(2).body());
+    }
+
+    private static class FakeTransport implements HttpTransport {
+        final Queue<Response> responses = new ArrayDeque<>();
+        final List<Request> requests = new ArrayList<>();
+
+        FakeTransport answer(int status, long retryAfterMs) {
+            responses.add(new Response(status, retryAfterMs));
+            return this;
+        }
+
+        @Override
+        public Response post(String url, byte[] body, Map<String, String> headers) throws IOException {
+            requests.add(new Request(url, body, Map.copyOf(headers)));
+            var response = responses.poll();
+            if (response == null) {
+                throw new IOException("no response queued");
+            }
+            return response;
+        }
+    }
+
+    private record Request(String url, byte[] body, Map<String, String> headers) {
+    }
+}
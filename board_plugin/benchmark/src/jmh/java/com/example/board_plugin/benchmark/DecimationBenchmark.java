@@ -0,0 +1,58 @@
+package com.example.board_plugin.benchmark;
+
+import com.example.board_plugin.measurement.DecimationConfig;
+import com.example.board_plugin.measurement.DecimationMode;
+import com.example.board_plugin.measurement.Decimator;
+import com.example.board_plugin.measurement.MeasurementType;
+import com.example.board_plugin.measurement.OverflowPolicy;
+import com.example.board_plugin.measurement.SampleRingBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Each mode reduces the stream to the 50 Hz the upload path is sized for.
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecimationBenchmark {
+
+    private static final int TARGET_HZ = 50;
+
+    @Param({"50", "100", "400", "800"})
+    public int hz;
+
+    @Param({"keepEveryNth", "blockAverage", "lowPass"})
+    public String mode;
+
+    private Decimator decimator;
+    private SampleRingBuffer output;
+    private SampleStream stream;
+
+    @Setup
+    public void setUp() {
+        var factor = Math.max(1, hz / TARGET_HZ);
+        decimator = new Decimator(new DecimationConfig(DecimationMode.fromString(mode), factor), hz);
+        output = new SampleRingBuffer(16384, 3, OverflowPolicy.DROP_OLDEST);
+        stream = new SampleStream(MeasurementType.ACCELERATION, hz);
+    }
+
+    @Benchmark
+    public boolean process() {
+        stream.advance();
+        return decimator.process(stream.x(), stream.y(), stream.z(), stream.timestamp(), output);
+    }
+}
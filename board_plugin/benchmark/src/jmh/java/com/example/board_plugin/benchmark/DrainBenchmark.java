@@ -0,0 +1,78 @@
+package com.example.board_plugin.benchmark;
+
+import com.example.board_plugin.measurement.MeasurementHandler;
+import com.example.board_plugin.measurement.MeasurementSnapshot;
+import com.example.board_plugin.measurement.MeasurementType;
+import com.example.board_plugin.measurement.OverflowPolicy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// One drain of a second's worth of accelerometer, gyro and quaternion samples.
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrainBenchmark {
+
+    static final String CONSUMER = "benchmark";
+    static final MeasurementType[] TYPES = {
+            MeasurementType.ACCELERATION, MeasurementType.ANGULAR_VELOCITY, MeasurementType.QUATERNION
+    };
+    // Seconds of data drained per invocation, one second per drain. A single drain takes
+    // microseconds, far too little to be timed on its own next to a per-invocation fixture.
+    static final int SECONDS = 256;
+
+    @Param({"50", "100", "400", "800"})
+    public int hz;
+
+    private MeasurementHandler handler;
+    private SampleStream[] streams;
+    private long drainedUpTo;
+
+    @Setup
+    public void setUp() {
+        handler = new MeasurementHandler(SECONDS * hz, OverflowPolicy.DROP_OLDEST);
+        handler.registerConsumer(CONSUMER);
+        streams = new SampleStream[TYPES.length];
+        for (int i = 0; i < TYPES.length; i++) {
+            streams[i] = new SampleStream(TYPES[i], hz);
+        }
+        drainedUpTo = SampleStream.START_MILLIS - 1;
+    }
+
+    // Fills the buffer with SECONDS seconds per stream; the invocation then drains them back out
+    // a second at a time, which is milliseconds of work against one fixture call.
+    @Setup(Level.Invocation)
+    public void fill() {
+        for (int i = 0; i < TYPES.length; i++) {
+            streams[i].recordInto(handler, TYPES[i], SECONDS * hz);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SECONDS)
+    public void drain(Blackhole blackhole) {
+        for (int second = 0; second < SECONDS; second++) {
+            drainedUpTo += 1000;
+            MeasurementSnapshot snapshot = handler.drain(CONSUMER, drainedUpTo);
+            blackhole.consume(snapshot);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.board_plugin.benchmark;
+
+import com.example.board_plugin.measurement.MeasurementHandler;
+import com.example.board_plugin.measurement.MeasurementSnapshot;
+import com.example.board_plugin.measurement.MeasurementType;
+import com.example.board_plugin.upload.MeasurementPayload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Serializing one drained second of samples in each of the forms the plugin produces: the
+// packed channel format, the legacy per-sample lists and the upload JSON.
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBenchmark {
+
+    private static final String MAC_ADDRESS = "D1:2C:5E:8A:00:01";
+
+    @Param({"50", "100", "400", "800"})
+    public int hz;
+
+    private MeasurementSnapshot snapshot;
+
+    @Setup
+    public void setUp() {
+        var handler = new MeasurementHandler();
+        handler.registerConsumer(DrainBenchmark.CONSUMER);
+        for (MeasurementType type : DrainBenchmark.TYPES) {
+            new SampleStream(type, hz).recordInto(handler, type, hz);
+        }
+        snapshot = handler.drain(DrainBenchmark.CONSUMER);
+    }
+
+    @Benchmark
+    public Map<String, byte[]> packed() {
+        return snapshot.toPackedMap();
+    }
+
+    @Benchmark
+    public Map<String, List<List<Object>>> measurementMap() {
+        return snapshot.toMeasurementMap();
+    }
+
+    @Benchmark
+    public byte[] uploadJson() {
+        return MeasurementPayload.encode(MAC_ADDRESS, snapshot);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.board_plugin.benchmark;
+
+import com.example.board_plugin.measurement.MeasurementType;
+import com.mbientlab.metawear.Data;
+import com.mbientlab.metawear.data.Acceleration;
+import com.mbientlab.metawear.data.AngularVelocity;
+import com.mbientlab.metawear.data.Quaternion;
+
+import java.util.Calendar;
+
+// A reusable stand-in for the SDK's Data. Like the real one it carries a Calendar timestamp and
+// value() builds a new value object on every call, so allocation figures include what reading a
+// sample costs the callback thread.
+final class FakeData implements Data {
+
+    private final MeasurementType type;
+    private final Calendar timestamp = Calendar.getInstance();
+    private float x;
+    private float y;
+    private float z;
+    private float w;
+
+    FakeData(MeasurementType type) {
+        this.type = type;
+    }
+
+    FakeData set(long timestampMillis, float x, float y, float z, float w) {
+        timestamp.setTimeInMillis(timestampMillis);
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        return this;
+    }
+
+    @Override
+    public Calendar timestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String formattedTimestamp() {
+        return timestamp.toString();
+    }
+
+    @Override
+    public float scale() {
+        return 1f;
+    }
+
+    @Override
+    public byte[] bytes() {
+        return new byte[0];
+    }
+
+    @Override
+    public <T> T value(Class<T> clazz) {
+        Object value = switch (type) {
+            case ACCELERATION, LINEAR_ACCELERATION -> new Acceleration(x, y, z);
+            case ANGULAR_VELOCITY -> new AngularVelocity(x, y, z);
+            case QUATERNION -> new Quaternion(w, x, y, z);
+        };
+        return clazz.cast(value);
+    }
+
+    @Override
+    public Class<?>[] types() {
+        return new Class<?>[0];
+    }
+
+    @Override
+    public <T> T extra(Class<T> clazz) {
+        return null;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.board_plugin.benchmark;
+
+import com.example.board_plugin.measurement.MeasurementHandler;
+import com.example.board_plugin.measurement.MeasurementType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Per-sample cost of getting a notification into the ring buffer. Scores are per sample.
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestBenchmark {
+
+    // Well below the ingest queue's capacity, so no sample of a burst is dropped.
+    private static final int BURST = 64;
+
+    @Param({"50", "100", "400", "800"})
+    public int hz;
+
+    private MeasurementHandler handler;
+    private SampleStream stream;
+
+    @Setup
+    public void setUp() {
+        handler = new MeasurementHandler();
+        handler.setOutputDataRate(MeasurementType.ACCELERATION, hz);
+        stream = new SampleStream(MeasurementType.ACCELERATION, hz);
+    }
+
+    // The whole live path: performMeasurement on the calling thread, then the ingest thread's
+    // clock correction, decimation and buffering, timed until the burst has reached the buffer.
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public long performMeasurement() {
+        for (int i = 0; i < BURST; i++) {
+            handler.performMeasurement(MeasurementType.ACCELERATION, stream.next());
+        }
+        long last = stream.timestamp();
+        while (handler.completeThrough() < last) {
+            Thread.onSpinWait();
+        }
+        return last;
+    }
+
+    // Only the ingest thread's share, called directly: decimation and the ring-buffer write.
+    @Benchmark
+    public void record() {
+        stream.advance();
+        handler.record(MeasurementType.ACCELERATION, stream.x(), stream.y(), stream.z(), stream.timestamp());
+    }
+}
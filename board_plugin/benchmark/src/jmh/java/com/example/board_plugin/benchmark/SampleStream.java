@@ -0,0 +1,79 @@
+package com.example.board_plugin.benchmark;
+
+import com.example.board_plugin.measurement.MeasurementHandler;
+import com.example.board_plugin.measurement.MeasurementType;
+
+// Synthetic motion at a fixed output data rate. Above 100 Hz the board packs three samples into
+// one notification and the SDK hands all of them out with the packet's timestamp, which is what
+// SampleClock has to spread out again.
+final class SampleStream {
+
+    static final long START_MILLIS = 1_700_000_000_000L;
+    private static final int PATTERN_LENGTH = 1024;
+
+    private final float[] x = new float[PATTERN_LENGTH];
+    private final float[] y = new float[PATTERN_LENGTH];
+    private final float[] z = new float[PATTERN_LENGTH];
+    private final float[] w = new float[PATTERN_LENGTH];
+    private final int samplesPerPacket;
+    private final double periodMillis;
+    private final FakeData data;
+    private long index = -1;
+
+    SampleStream(MeasurementType type, int hz) {
+        this.samplesPerPacket = hz > 100 ? 3 : 1;
+        this.periodMillis = 1000.0 / hz;
+        this.data = new FakeData(type);
+        for (int i = 0; i < PATTERN_LENGTH; i++) {
+            double phase = 2 * Math.PI * i / PATTERN_LENGTH;
+            x[i] = (float) Math.sin(phase);
+            y[i] = (float) Math.cos(3 * phase);
+            z[i] = (float) (0.98 + 0.05 * Math.sin(7 * phase));
+            w[i] = (float) Math.cos(phase / 2);
+        }
+    }
+
+    void advance() {
+        index++;
+    }
+
+    FakeData next() {
+        advance();
+        return data.set(rawTimestamp(), x(), y(), z(), w());
+    }
+
+    float x() {
+        return x[(int) (index % PATTERN_LENGTH)];
+    }
+
+    float y() {
+        return y[(int) (index % PATTERN_LENGTH)];
+    }
+
+    float z() {
+        return z[(int) (index % PATTERN_LENGTH)];
+    }
+
+    float w() {
+        return w[(int) (index % PATTERN_LENGTH)];
+    }
+
+    // What the SDK reports: the timestamp of the packet the sample arrived in.
+    long rawTimestamp() {
+        long packet = index / samplesPerPacket;
+        return START_MILLIS + Math.round(packet * samplesPerPacket * periodMillis);
+    }
+
+    // What SampleClock turns the raw timestamp into.
+    long timestamp() {
+        return rawTimestamp() + Math.round((index % samplesPerPacket) * periodMillis);
+    }
+
+    // Records `count` samples straight into the handler, bypassing the ingest thread.
+    void recordInto(MeasurementHandler handler, MeasurementType type, int count) {
+        for (int i = 0; i < count; i++) {
+            advance();
+            handler.record(type, x(), y(), z(), w(), timestamp());
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package android.util;
+
+// Stand-in for the framework class; benchmarks do not want log output in the measured path.
+public final class Log {
+
+    private Log() {
+    }
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+}
@@ -0,0 +1,21 @@
+package com.mbientlab.metawear;
+
+import java.util.Calendar;
+
+// The parts of the MetaWear SDK interface the measurement pipeline compiles against.
+public interface Data {
+
+    Calendar timestamp();
+
+    String formattedTimestamp();
+
+    float scale();
+
+    byte[] bytes();
+
+    <T> T value(Class<T> clazz);
+
+    Class<?>[] types();
+
+    <T> T extra(Class<T> clazz);
+}
@@ -0,0 +1,26 @@
+package com.mbientlab.metawear.data;
+
+public final class AngularVelocity {
+
+    private final float x;
+    private final float y;
+    private final float z;
+
+    public AngularVelocity(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public float x() {
+        return x;
+    }
+
+    public float y() {
+        return y;
+    }
+
+    public float z() {
+        return z;
+    }
+}
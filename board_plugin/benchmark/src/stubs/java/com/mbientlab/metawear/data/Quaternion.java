@@ -0,0 +1,32 @@
+package com.mbientlab.metawear.data;
+
+public final class Quaternion {
+
+    private final float w;
+    private final float x;
+    private final float y;
+    private final float z;
+
+    public Quaternion(float w, float x, float y, float z) {
+        this.w = w;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public float w() {
+        return w;
+    }
+
+    public float x() {
+        return x;
+    }
+
+    public float y() {
+        return y;
+    }
+
+    public float z() {
+        return z;
+    }
+}
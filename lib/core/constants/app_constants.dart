@@ -11,9 +11,40 @@ class AppConstants {
   static const Duration connectionTimeout = Duration(seconds: 10);
   static const Duration dataCollectionInterval = Duration(seconds: 10);
   static const Duration initialDelay = Duration(milliseconds: 500);
+  static const Duration sampleStreamInterval = Duration(seconds: 1);
+  static const int sampleStreamMaxSamples = 500;
+  static const int sampleStreamMaxInFlight = 4;
 
   static const int batteryAlertThreshold = 20;
 
+  // Sensor profile applied by the board plugin on connect
+  static const Map<String, Object> sensorProfile = {
+    'accelerometerOdr': 50.0,
+    'accelerometerRange': 2.0,
+    'gyroOdr': 50.0,
+    'gyroRange': 2000.0,
+    'packedThresholdHz': 100.0,
+    // Also log samples on the board so a dropped link is backfilled on
+    // reconnect. Disables packed streaming.
+    'onboardLogging': false,
+    // Add 'quaternion' and/or 'linearAcceleration' to stream sensor fusion
+    // output instead of raw accelerometer and gyroscope samples.
+    'modules': ['accelerometer', 'gyroscope', 'battery'],
+  };
+
+  // Upload run by the plugin from the foreground service, so samples keep
+  // reaching the API while the Flutter engine is paused or gone. When
+  // enabled, DataCollectionService stops posting samples itself.
+  static const Map<String, Object> uploader = {
+    'enabled': true,
+    'baseUrl': apiBaseUrl,
+    'apiKey': apiKey,
+    'intervalMs': 10000,
+    'compress': true,
+  };
+
+  static bool get nativeUploadEnabled => uploader['enabled'] == true;
+
   // SharedPreferences Keys
   static const String prefMacAddress = "last_connected_mac";
 }
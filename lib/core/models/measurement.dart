@@ -1,17 +1,33 @@
-import 'dart:convert';
-
 class Measurement {
-  final String data;
+  final double x;
+  final double y;
+  final double z;
   final int timestamp;
 
-  Measurement(this.data, this.timestamp);
+  // Only set for quaternion samples from sensor fusion.
+  final double? w;
+
+  Measurement(this.x, this.y, this.z, this.timestamp, {this.w});
+
+  // Samples travel as float32; rounding keeps the JSON at the precision the
+  // board reports instead of printing float32 noise.
+  static double _round(double value) => (value * 1000).roundToDouble() / 1000;
 
   @override
   String toString() {
-    return '{data: ${json.decode(data)}, timestamp: $timestamp}';
+    return '{data: ${_serializeData()}, timestamp: $timestamp}';
   }
 
   Map<String, dynamic> toJson() {
-    return {'data': json.decode(data), 'timestamp': timestamp};
+    return {'data': _serializeData(), 'timestamp': timestamp};
+  }
+
+  Map<String, double> _serializeData() {
+    return {
+      if (w != null) 'w': _round(w!),
+      'x': _round(x),
+      'y': _round(y),
+      'z': _round(z),
+    };
   }
 }
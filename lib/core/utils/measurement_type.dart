@@ -1,6 +1,8 @@
 enum MeasurementType {
   acceleration('Acceleration', 'Motion detection (X, Y, Z axes)'),
-  angularVelocity('Angular Velocity', 'Rotation rate (deg/sec)');
+  angularVelocity('Angular Velocity', 'Rotation rate (deg/sec)'),
+  quaternion('Quaternion', 'Fused orientation (W, X, Y, Z)'),
+  linearAcceleration('Linear Acceleration', 'Acceleration without gravity (g)');
 
   final String displayName;
   final String description;
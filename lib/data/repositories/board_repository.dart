@@ -1,3 +1,6 @@
+import 'dart:async';
+import 'dart:typed_data';
+
 import 'package:flutter/material.dart';
 import 'package:flutter/services.dart';
 import 'package:optional/optional.dart';
@@ -5,6 +8,7 @@ import 'package:ppwd_frontend/core/utils/error_handler.dart';
 import 'package:ppwd_frontend/core/utils/logger.dart';
 import 'package:ppwd_frontend/core/utils/user_shared_preference.dart';
 
+import '../../core/constants/app_constants.dart';
 import '../../core/models/measurement.dart';
 
 typedef ConnectionSuccessCallback =
@@ -13,23 +17,101 @@ typedef ConnectionSuccessCallback =
       int batteryLevel,
       List<String> activeSensors,
     );
-typedef DisconnectionCallback = void Function(String reason);
+typedef DisconnectionCallback =
+    void Function(String macAddress, String reason);
 
 class BoardRepository {
   static const _channel = MethodChannel('flutter.native/board');
   static const _connectToBoardFunction = 'connectToBoard';
   static const _disconnectFromBoardFunction = 'disconnectFromBoard';
-  static const _getModuleDataFunction = 'getModulesData';
+  static const _getPackedDataFunction = 'getModulesDataPacked';
+  static const _getDevicesDataFunction = 'getDevicesDataPacked';
   static const _getBatteryLevelFunction = 'getBatteryLevel';
   static const _handleBoardDisconnection = 'handleBoardDisconnection';
   static const _onConnectionSuccess = 'onConnectionSuccess';
+  static const _ackSampleBatchFunction = 'ackSampleBatch';
+  static const _configureUploaderFunction = 'configureUploader';
+  static const _getMetricsFunction = 'getMetrics';
+
+  static const _samplesChannel = EventChannel('flutter.native/board/samples');
+  static final _samplesController =
+      StreamController<Map<String, List<Measurement>>>.broadcast(
+        onListen: _startSampleStream,
+        onCancel: _stopSampleStream,
+      );
+  static final _deviceSamplesController =
+      StreamController<Map<String, Map<String, List<Measurement>>>>.broadcast(
+        onListen: _startSampleStream,
+        onCancel: _stopSampleStream,
+      );
+  static StreamSubscription<dynamic>? _nativeSamplesSubscription;
+  static int _sampleStreamListeners = 0;
+
+  static const _packedFormatVersion = 1;
+  static const _packedHeaderSize = 16;
 
   ConnectionSuccessCallback? _onConnectionSuccessCallback;
   DisconnectionCallback? _onDisconnectionCallback;
 
-  bool _isConnected = false;
+  final Set<String> _connectedBoards = {};
+
+  bool get isConnected => _connectedBoards.isNotEmpty;
+
+  /// Sample batches pushed by the plugin. All listeners share one native
+  /// subscription, so every consumer sees every sample.
+  Stream<Map<String, List<Measurement>>> get sampleStream =>
+      _samplesController.stream;
+
+  /// Sample batches keyed by board MAC address. Only emits while more than
+  /// one board is connected; the batches are cut at a common timestamp so
+  /// each one covers the same time span on every board.
+  Stream<Map<String, Map<String, List<Measurement>>>> get deviceSampleStream =>
+      _deviceSamplesController.stream;
+
+  static void _startSampleStream() {
+    if (_sampleStreamListeners++ > 0) {
+      return;
+    }
+    _nativeSamplesSubscription = _samplesChannel
+        .receiveBroadcastStream({
+          'intervalMs': AppConstants.sampleStreamInterval.inMilliseconds,
+          'maxSamples': AppConstants.sampleStreamMaxSamples,
+          'maxInFlight': AppConstants.sampleStreamMaxInFlight,
+        })
+        .listen(
+          _handleSampleBatch,
+          onError: (error) => Logger.e('Sample stream error', error: error),
+        );
+  }
+
+  static Future<void> _stopSampleStream() async {
+    if (--_sampleStreamListeners > 0) {
+      return;
+    }
+    await _nativeSamplesSubscription?.cancel();
+    _nativeSamplesSubscription = null;
+  }
 
-  bool get isConnected => _isConnected;
+  static void _handleSampleBatch(dynamic event) {
+    final batch = event as Map<Object?, Object?>;
+    final sequence = batch['sequence'] as int;
+
+    try {
+      final samples = batch['samples'] as Map<Object?, Object?>;
+      _samplesController.add(_parseModuleData(samples));
+
+      final devices = batch['devices'] as Map<Object?, Object?>?;
+      if (devices != null) {
+        _deviceSamplesController.add(_parseDeviceData(devices));
+      }
+    } catch (e) {
+      Logger.e('Error decoding sample batch $sequence', error: e);
+    }
+
+    _channel
+        .invokeMethod(_ackSampleBatchFunction, {'sequence': sequence})
+        .catchError((e) => Logger.e('Error acknowledging batch', error: e));
+  }
 
   void setupConnectionHandlers(
     BuildContext? context, {
@@ -77,31 +159,42 @@ class BoardRepository {
       'Connection successful to $macAddress with ${activeSensors.length} active sensors',
     );
 
-    _isConnected = true;
+    _connectedBoards.add(macAddress);
     await UserSimplePreferences.setMacAddress(macAddress);
   }
 
   void _handleDisconnection(dynamic arguments, BuildContext? context) async {
-    final reason = arguments as String? ?? 'Unknown reason';
-    Logger.i('Device disconnected: $reason');
+    final args = arguments as Map<dynamic, dynamic>? ?? const {};
+    final macAddress = args['macAddress'] as String? ?? '';
+    final reason = args['reason'] as String? ?? 'Unknown reason';
+    Logger.i('Device $macAddress disconnected: $reason');
 
-    _isConnected = false;
+    _connectedBoards.remove(macAddress);
 
     if (context != null && context.mounted) {
       ErrorHandler.showSuccessMessage(context, 'Device disconnected: $reason');
     }
 
     if (_onDisconnectionCallback != null) {
-      _onDisconnectionCallback!(reason);
+      _onDisconnectionCallback!(macAddress, reason);
     }
   }
 
+  /// [source] replaces the board with a synthetic or replayed sample source,
+  /// e.g. `{'type': 'synthetic', 'hz': 400, 'burstSize': 3}` or
+  /// `{'type': 'replay', 'path': ..., 'speed': 10}`; [mac] then only names
+  /// the session.
   Future<Optional<bool>> connectToDevice(
     BuildContext? context,
-    String mac,
-  ) async {
+    String mac, {
+    Map<String, dynamic>? source,
+  }) async {
     return ErrorHandler.handleMethodCall(_connectToBoardFunction, () async {
-      await _channel.invokeMethod(_connectToBoardFunction, {'macAddress': mac});
+      await _channel.invokeMethod(_connectToBoardFunction, {
+        'macAddress': mac,
+        'profile': AppConstants.sensorProfile,
+        if (source != null) 'source': source,
+      });
 
       ErrorHandler.showSuccessMessage(context, 'Attempting to connect to $mac');
 
@@ -112,9 +205,9 @@ class BoardRepository {
   Future<Optional<Map<String, List<Measurement>>>> getModuleData(
     BuildContext? context,
   ) async {
-    return ErrorHandler.handleMethodCall(_getModuleDataFunction, () async {
+    return ErrorHandler.handleMethodCall(_getPackedDataFunction, () async {
       final Map<Object?, Object?> rawData = await _channel.invokeMethod(
-        _getModuleDataFunction,
+        _getPackedDataFunction,
       );
 
       if (rawData.isEmpty) {
@@ -125,28 +218,99 @@ class BoardRepository {
     }, context);
   }
 
-  Map<String, List<Measurement>> _parseModuleData(
+  Future<Optional<Map<String, Map<String, List<Measurement>>>>> getDevicesData(
+    BuildContext? context,
+  ) async {
+    return ErrorHandler.handleMethodCall(_getDevicesDataFunction, () async {
+      final Map<Object?, Object?> rawData = await _channel.invokeMethod(
+        _getDevicesDataFunction,
+      );
+      return _parseDeviceData(rawData);
+    }, context);
+  }
+
+  static Map<String, Map<String, List<Measurement>>> _parseDeviceData(
+    Map<Object?, Object?> rawData,
+  ) {
+    return rawData.map((key, value) {
+      return MapEntry(
+        key as String,
+        _parseModuleData(value as Map<Object?, Object?>),
+      );
+    });
+  }
+
+  static Map<String, List<Measurement>> _parseModuleData(
     Map<Object?, Object?> rawData,
   ) {
     return rawData.map((key, value) {
-      List<Measurement> parsedList =
-          (value as List)
-              .map((item) => Measurement(item[0] as String, item[1] as int))
-              .toList();
-      return MapEntry(key as String, parsedList);
+      return MapEntry(key as String, _decodePackedSamples(value as Uint8List));
     });
   }
 
+  static List<Measurement> _decodePackedSamples(Uint8List bytes) {
+    final view = ByteData.sublistView(bytes);
+    final version = view.getUint8(0);
+    if (version != _packedFormatVersion) {
+      throw FormatException('Unsupported packed sample version: $version');
+    }
+
+    final components = view.getUint8(1);
+    final count = view.getUint32(4, Endian.little);
+    final sampleSize = components * 4 + 8;
+
+    var offset = _packedHeaderSize;
+    return List.generate(count, (_) {
+      final measurement = Measurement(
+        view.getFloat32(offset, Endian.little),
+        view.getFloat32(offset + 4, Endian.little),
+        view.getFloat32(offset + 8, Endian.little),
+        view.getInt64(offset + components * 4, Endian.little),
+        w: components > 3 ? view.getFloat32(offset + 12, Endian.little) : null,
+      );
+      offset += sampleSize;
+      return measurement;
+    }, growable: false);
+  }
+
   Future<Optional<int>> getBatteryLevel(BuildContext? context) async {
     return ErrorHandler.handleMethodCall(_getBatteryLevelFunction, () async {
       return await _channel.invokeMethod(_getBatteryLevelFunction);
     }, context);
   }
 
+  /// Hands the upload settings to the plugin. Returns whether the native
+  /// uploader is running, which needs the foreground service to be started.
+  Future<bool> configureUploader() async {
+    try {
+      final running = await _channel.invokeMethod<bool>(
+        _configureUploaderFunction,
+        AppConstants.uploader,
+      );
+      return running ?? false;
+    } on PlatformException catch (e) {
+      Logger.e('Error configuring native uploader', error: e.message);
+      return false;
+    }
+  }
+
+  /// Snapshot of the plugin's counters, gauges and latency histograms.
+  Future<Map<String, dynamic>> getMetrics() async {
+    try {
+      final metrics = await _channel.invokeMapMethod<String, dynamic>(
+        _getMetricsFunction,
+      );
+      return metrics ?? {};
+    } on PlatformException catch (e) {
+      Logger.e('Error reading plugin metrics', error: e.message);
+      return {};
+    }
+  }
+
   Future<void> disconnectFromDevice(BuildContext? context) async {
     try {
       await _channel.invokeMethod(_disconnectFromBoardFunction);
-      _isConnected = false;
+      _connectedBoards.clear();
 
       ErrorHandler.showSuccessMessage(context, 'Disconnected from device');
     } catch (e) {
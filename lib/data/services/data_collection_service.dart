@@ -4,6 +4,7 @@ import 'package:flutter/material.dart';
 
 import '../../core/constants/app_constants.dart';
 import '../../core/models/board.dart';
+import '../../core/models/measurement.dart';
 import '../../core/network/connection_status_provider.dart';
 import '../../core/utils/logger.dart';
 import '../../data/repositories/board_repository.dart';
@@ -22,6 +23,8 @@ class DataCollectionService {
   DataCollectionService._internal();
 
   Timer? _dataTimer;
+  StreamSubscription<Map<String, List<Measurement>>>? _samplesSubscription;
+  Map<String, List<Measurement>> _pendingMeasurements = {};
   bool _isCollecting = false;
   ConnectionStatusCallback? _connectionStatusCallback;
   StreamSubscription<ConnectionStatus>? _connectionStatusSubscription;
@@ -82,6 +85,14 @@ class DataCollectionService {
     Logger.i('Starting data collection for device: $macAddress');
     _isCollecting = true;
 
+    if (AppConstants.nativeUploadEnabled) {
+      final running = await repository.configureUploader();
+      Logger.i('Samples are uploaded natively (running: $running)');
+    } else {
+      _samplesSubscription = repository.sampleStream.listen(
+        _appendMeasurements,
+      );
+    }
     _scheduleDataCollection(context, repository, macAddress, onBatteryUpdated);
 
     await collectAndSendData(context, repository, macAddress, onBatteryUpdated);
@@ -103,8 +114,23 @@ class DataCollectionService {
     });
   }
 
+  void _appendMeasurements(Map<String, List<Measurement>> batch) {
+    batch.forEach((type, measurements) {
+      _pendingMeasurements.putIfAbsent(type, () => []).addAll(measurements);
+    });
+  }
+
+  Map<String, List<Measurement>> _takePendingMeasurements() {
+    final measurements = _pendingMeasurements;
+    _pendingMeasurements = {};
+    return measurements;
+  }
+
   Future<void> stopDataCollection() async {
     _isCollecting = false;
+    await _samplesSubscription?.cancel();
+    _samplesSubscription = null;
+
     if (_dataTimer != null) {
       Logger.i('Stopping data collection');
       _dataTimer?.cancel();
@@ -126,32 +152,30 @@ class DataCollectionService {
     Logger.d("Collecting data for device: $macAddress");
 
     try {
-      final measurementsOptional = await repository.getModuleData(context);
-
-      measurementsOptional.ifPresent((measurements) async {
-        if (measurements.isNotEmpty) {
-          Logger.d("Found data for sensors: ${measurements.keys.join(', ')}");
-
-          final success = await _boardService.sendSensorData(
-            Board(macAddress, measurements),
-          );
-
-          Logger.i(
-            success
-                ? 'Successfully processed sensor data'
-                : 'Failed to process sensor data',
-          );
-
-          if (_connectionProvider.isConnected &&
-              _connectionProvider.cachedRequestsCount > 0) {
-            sendCachedData();
-          }
-        } else {
-          Logger.d("No sensor data available");
+      final measurements = _takePendingMeasurements();
+
+      if (measurements.isNotEmpty) {
+        Logger.d("Found data for sensors: ${measurements.keys.join(', ')}");
+
+        final success = await _boardService.sendSensorData(
+          Board(macAddress, measurements),
+        );
+
+        Logger.i(
+          success
+              ? 'Successfully processed sensor data'
+              : 'Failed to process sensor data',
+        );
+
+        if (_connectionProvider.isConnected &&
+            _connectionProvider.cachedRequestsCount > 0) {
+          sendCachedData();
         }
+      } else {
+        Logger.d("No sensor data available");
+      }
 
-        await _updateBatteryLevel(context, repository, onBatteryUpdated);
-      });
+      await _updateBatteryLevel(context, repository, onBatteryUpdated);
     } catch (e) {
       Logger.e("Error collecting data", error: e);
     }
@@ -184,7 +184,12 @@ class _BoardConnectionPageState extends State<BoardConnectionPage>
     }
   }
 
-  void _handleDisconnection(String reason) {
+  void _handleDisconnection(String macAddress, String reason) {
+    // This page shows a single board; other sessions dropping do not concern it.
+    final shown = _connectionManager.connectedDevice;
+    if (shown.isNotEmpty && macAddress.isNotEmpty && shown != macAddress) {
+      return;
+    }
     _connectionManager.setConnected(false);
     _connectionManager.setConnecting(false);
     _connectionManager.setConnectionStatus("Device disconnected: $reason");
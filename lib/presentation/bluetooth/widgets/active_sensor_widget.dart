@@ -21,6 +21,11 @@ class ActiveSensorsWidget extends StatelessWidget {
           'Measures rotational velocity around X, Y, and Z axes. Used for detecting precise orientation changes.',
       icon: Icons.rotate_90_degrees_ccw,
     ),
+    'Sensor Fusion': SensorInfo(
+      description:
+          'Combines accelerometer and gyroscope on the board into orientation quaternions and linear acceleration.',
+      icon: Icons.threed_rotation,
+    ),
     'Battery': SensorInfo(
       description: 'Monitors device battery level. Used for power management.',
       icon: Icons.battery_full,
@@ -71,7 +76,7 @@ class ActiveSensorsWidget extends StatelessWidget {
               ],
             ),
             const SizedBox(height: 16),
-            // Fixed layout: Row with Expanded for equal spacing of 3 sensors
+            // Fixed layout: Row with Expanded for equal spacing of the sensors
             Row(
               children:
                   _sensorInfoMap.keys.map((sensor) {
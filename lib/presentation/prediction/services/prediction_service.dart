@@ -5,6 +5,7 @@ import 'package:dio/dio.dart';
 
 import '../../../core/constants/app_constants.dart';
 import '../../../core/models/board.dart';
+import '../../../core/models/measurement.dart';
 import '../../../core/utils/logger.dart';
 import '../../../core/utils/user_shared_preference.dart';
 import '../../../data/repositories/board_repository.dart';
@@ -14,6 +15,8 @@ class PredictionService {
   final Dio _dio;
 
   Timer? _timer;
+  StreamSubscription<Map<String, List<Measurement>>>? _samplesSubscription;
+  Map<String, List<Measurement>> _window = {};
 
   static const Duration _updateInterval = Duration(
     seconds: 2,
@@ -40,30 +43,39 @@ class PredictionService {
 
   void startTimer(VoidCallback onUpdate) {
     stopTimer();
-    _fetchPrediction(onUpdate); // First fetch immediately
+    _samplesSubscription = _repository.sampleStream.listen(_appendToWindow);
     _timer = Timer.periodic(_updateInterval, (_) => _fetchPrediction(onUpdate));
   }
 
   void stopTimer() {
     _timer?.cancel();
     _timer = null;
+    _samplesSubscription?.cancel();
+    _samplesSubscription = null;
+    _window = {};
+  }
+
+  void _appendToWindow(Map<String, List<Measurement>> batch) {
+    batch.forEach((type, measurements) {
+      _window.putIfAbsent(type, () => []).addAll(measurements);
+    });
   }
 
   bool get isTimerActive => _timer?.isActive ?? false;
 
   Future<int?> _fetchPrediction(VoidCallback onUpdate) async {
     try {
-      final measurementsOptional = await _repository.getModuleData(null);
+      final measurements = _window;
+      _window = {};
 
-      if (!measurementsOptional.isPresent ||
-          measurementsOptional.value.isEmpty) {
+      if (measurements.isEmpty) {
         return null;
       }
 
       final macAddress = UserSimplePreferences.getMacAddress();
       if (macAddress == null) return null;
 
-      final board = Board(macAddress, measurementsOptional.value);
+      final board = Board(macAddress, measurements);
       final prediction = await _callPredictionAPI(board);
 
       if (prediction != null) {